@@ -0,0 +1,55 @@
+package eu.scape_project.pt.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * Toolspecs of the ToMaR tests, copied from the test jar to a local
+ * directory so that they can be read like a repository.
+ */
+public final class Toolspecs {
+
+    /**
+     * Toolspecs copied to the repository directory.
+     */
+    public static final String[] TOOLS = {"file", "foo", "ps2pdf", "tar"};
+
+    private Toolspecs() {
+    }
+
+    /**
+     * Copies the toolspecs into a new temporary directory.
+     *
+     * @return the directory
+     */
+    public static File createRepositoryDir() throws IOException {
+        File dir = Files.createTempDirectory("toolspecs").toFile();
+        dir.deleteOnExit();
+        byte[] buffer = new byte[8192];
+        for (String tool : TOOLS) {
+            InputStream in = Toolspecs.class.getClassLoader()
+                .getResourceAsStream("toolspecs/" + tool + ".xml");
+            if (in == null) {
+                throw new IOException("toolspec " + tool + " not on the classpath");
+            }
+            File file = new File(dir, tool + ".xml");
+            file.deleteOnExit();
+            OutputStream out = new FileOutputStream(file);
+            try {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+        }
+        return dir;
+    }
+
+}
@@ -0,0 +1,79 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.scape_project.pt.bench.Toolspecs;
+import eu.scape_project.pt.repo.CachingRepository;
+import eu.scape_project.pt.repo.Repository;
+import eu.scape_project.pt.repo.ToolRepository;
+import eu.scape_project.pt.util.PipedArgsParser;
+import eu.scape_project.pt.util.PropertyNames;
+
+/**
+ * Split planning: resolution of the input files of all control lines and
+ * their assignment to hosts, against a {@link SyntheticFileSystem}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, batchSize = 1)
+@Measurement(iterations = 3, batchSize = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LocationMapBenchmark {
+
+    @Param({"1000", "5000"})
+    public int hosts;
+
+    @Param({"100000", "1000000"})
+    public int lines;
+
+    @Param({"1", "8"})
+    public int threads;
+
+    private Configuration conf;
+    private Repository repo;
+    private Path controlFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        conf = new Configuration();
+        SyntheticFileSystem.register(conf);
+        conf.setInt(SyntheticFileSystem.HOSTS, hosts);
+        conf.setInt(SyntheticFileSystem.LINES, lines);
+        conf.setInt(PropertyNames.PLANNING_THREADS, threads);
+        SyntheticFileSystem fs = (SyntheticFileSystem) FileSystem.get(
+                URI.create(SyntheticFileSystem.SCHEME + "://h" + hosts + "-l" + lines + "/"), conf);
+        controlFile = fs.getControlFile();
+
+        File dir = Toolspecs.createRepositoryDir();
+        repo = new CachingRepository(new ToolRepository(FileSystem.getLocal(conf),
+                    new Path(dir.getPath())), conf);
+    }
+
+    @Benchmark
+    public Map<String, ArrayList<String>> createLocationMap() throws IOException {
+        return ControlFileInputFormat.createLocationMap(controlFile, conf, repo,
+                new PipedArgsParser());
+    }
+
+}
@@ -0,0 +1,153 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * A {@link MockupFileSystem} populated with input files spread over many
+ * hosts and a control file referring to them.
+ *
+ * The filesystem is registered for the scheme {@link #SCHEME}, its contents
+ * are generated deterministically on initialization from the configuration,
+ * so Hadoop's filesystem cache hands out one instance per authority.
+ */
+public class SyntheticFileSystem extends MockupFileSystem {
+
+    public static final String SCHEME = "synthetic";
+
+    public static final String HOSTS = "bench.synthetic.hosts";
+    public static final String LINES = "bench.synthetic.lines";
+    public static final String FILES = "bench.synthetic.files";
+
+    public static final String CONTROL_FILE = "/control.txt";
+
+    private static final int FILES_PER_DIR = 1000;
+    private static final int REPLICATION = 3;
+    private static final long FILE_LENGTH = 64L * 1024 * 1024;
+
+    private URI uri;
+    private final Map<String, List<FileStatus>> dirs = new HashMap<String, List<FileStatus>>();
+    private File localControlFile;
+    private long controlFileLength;
+
+    /**
+     * Registers the filesystem in a configuration.
+     */
+    public static void register(Configuration conf) {
+        conf.setClass("fs." + SCHEME + ".impl", SyntheticFileSystem.class, FileSystem.class);
+    }
+
+    @Override
+    public void initialize(URI name, Configuration conf) throws IOException {
+        super.initialize(name, conf);
+        uri = URI.create(SCHEME + "://" + name.getAuthority() + "/");
+        int hosts = conf.getInt(HOSTS, 1000);
+        int lines = conf.getInt(LINES, 100000);
+        int files = Math.min(lines, conf.getInt(FILES, 100000));
+
+        String[] hostNames = new String[hosts];
+        for (int h = 0; h < hosts; h++) {
+            hostNames[h] = "host" + h;
+        }
+        Random random = new Random(42);
+        Path[] paths = new Path[files];
+        for (int f = 0; f < files; f++) {
+            Path dir = new Path(uri.toString() + "in/d" + (f / FILES_PER_DIR));
+            paths[f] = new Path(dir, "f" + f);
+            String[] replicas = new String[Math.min(REPLICATION, hosts)];
+            for (int r = 0; r < replicas.length; r++) {
+                // distinct consecutive hosts starting at a random one
+                replicas[r] = hostNames[(random.nextInt(hosts) + r) % hosts];
+            }
+            addFile(paths[f].toString(), true, new BlockLocation[]{
+                new BlockLocation(null, replicas, 0, FILE_LENGTH)
+            });
+            String key = dir.toUri().getPath();
+            List<FileStatus> listing = dirs.get(key);
+            if (listing == null) {
+                dirs.put(key, listing = new ArrayList<FileStatus>());
+            }
+            listing.add(new FileStatus(FILE_LENGTH, false, REPLICATION, FILE_LENGTH, 0, paths[f]));
+        }
+
+        localControlFile = File.createTempFile("control", ".txt");
+        localControlFile.deleteOnExit();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(localControlFile), "UTF-8"));
+        try {
+            for (int l = 0; l < lines; l++) {
+                writer.write("file identify --input=\"" + paths[l % files] + "\"\n");
+            }
+        } finally {
+            writer.close();
+        }
+        controlFileLength = localControlFile.length();
+    }
+
+    /**
+     * Gets the path of the control file.
+     */
+    public Path getControlFile() {
+        return new Path(uri.toString() + CONTROL_FILE.substring(1));
+    }
+
+    @Override
+    public URI getUri() {
+        return uri;
+    }
+
+    @Override
+    public FileStatus getFileStatus(Path path) {
+        String key = path.toUri().getPath();
+        if (CONTROL_FILE.equals(key)) {
+            return new FileStatus(controlFileLength, false, REPLICATION, FILE_LENGTH, 0, path);
+        }
+        if (dirs.containsKey(key)) {
+            return new FileStatus(0, true, 0, 0, 0, path);
+        }
+        return new FileStatus(FILE_LENGTH, false, REPLICATION, FILE_LENGTH, 0, path);
+    }
+
+    @Override
+    public FileStatus[] listStatus(Path dir) {
+        List<FileStatus> listing = dirs.get(dir.toUri().getPath());
+        return listing == null ? new FileStatus[0] : listing.toArray(new FileStatus[listing.size()]);
+    }
+
+    @Override
+    public boolean exists(Path path) {
+        String key = path.toUri().getPath();
+        return CONTROL_FILE.equals(key) || dirs.containsKey(key) || super.exists(path);
+    }
+
+    @Override
+    public FSDataInputStream open(Path path) throws IOException {
+        if (!CONTROL_FILE.equals(path.toUri().getPath())) {
+            throw new IOException(path + " has no content");
+        }
+        return FileSystem.getLocal(getConf()).open(new Path(localControlFile.getPath()));
+    }
+
+    @Override
+    public FSDataInputStream open(Path path, int bufferSize) throws IOException {
+        return open(path);
+    }
+
+}
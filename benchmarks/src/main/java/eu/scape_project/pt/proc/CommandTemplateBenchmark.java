@@ -0,0 +1,72 @@
+package eu.scape_project.pt.proc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.scape_project.pt.bench.Toolspecs;
+import eu.scape_project.pt.repo.ToolRepository;
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Operation;
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Tool;
+
+/**
+ * Substitution of parameters into the command of an operation as done by
+ * ToolProcessor.replaceAll, which is private and delegates to the
+ * CommandTemplate of the operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandTemplateBenchmark {
+
+    private Tool tool;
+    private Operation operation;
+    private Map<String, String> parameters;
+
+    @Setup
+    public void setUp() throws IOException {
+        File dir = Toolspecs.createRepositoryDir();
+        ToolRepository repo = new ToolRepository(FileSystem.getLocal(new Configuration()),
+                new Path(dir.getPath()));
+        tool = repo.getTool("file");
+        ToolProcessor processor = new ToolProcessor(tool);
+        operation = processor.findOperation("identify");
+        processor.setOperation(operation);
+
+        parameters = new HashMap<String, String>();
+        parameters.putAll(processor.getInputFileParameters());
+        parameters.putAll(processor.getOutputFileParameters());
+        parameters.putAll(processor.getOtherParameters());
+        parameters.put("input", "file-00001.pdf file with spaces-00002.pdf");
+    }
+
+    @Benchmark
+    public String render() {
+        return CommandTemplate.forOperation(tool, operation).render(parameters);
+    }
+
+    @Benchmark
+    public String[] renderArgv() {
+        return CommandTemplate.forOperation(tool, operation).renderArgv(parameters);
+    }
+
+}
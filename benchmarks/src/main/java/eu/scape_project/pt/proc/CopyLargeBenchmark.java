@@ -0,0 +1,109 @@
+package eu.scape_project.pt.proc;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Piping of streams between processors with {@link Processor#copyLarge}:
+ * from the standard output of a local process into the standard input of
+ * another one, between local files and from memory.
+ * Process pipes need a Unix-like system with head and cat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, batchSize = 1)
+@Measurement(iterations = 10, batchSize = 1)
+@Fork(1)
+public class CopyLargeBenchmark {
+
+    @Param({"1048576", "67108864"})
+    public int size;
+
+    @Param({"65536"})
+    public int bufferSize;
+
+    private File source;
+    private File target;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        source = File.createTempFile("copylarge", ".in");
+        target = File.createTempFile("copylarge", ".out");
+        RandomAccessFile file = new RandomAccessFile(source, "rw");
+        try {
+            file.setLength(size);
+        } finally {
+            file.close();
+        }
+        bytes = new byte[size];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        source.delete();
+        target.delete();
+    }
+
+    @Benchmark
+    public long processToProcess() throws Exception {
+        Process producer = new ProcessBuilder("head", "-c", String.valueOf(size), "/dev/zero").start();
+        Process consumer = new ProcessBuilder("cat")
+            .redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")))
+            .start();
+        InputStream in = producer.getInputStream();
+        OutputStream out = consumer.getOutputStream();
+        long count = Processor.copyLarge(in, out, bufferSize);
+        in.close();
+        out.close();
+        producer.waitFor();
+        consumer.waitFor();
+        return count;
+    }
+
+    @Benchmark
+    public long fileToFile() throws IOException {
+        InputStream in = new FileInputStream(source);
+        OutputStream out = new FileOutputStream(target);
+        try {
+            return Processor.copyLarge(in, out, bufferSize);
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public long memoryToFile() throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        OutputStream out = new FileOutputStream(target);
+        try {
+            return Processor.copyLarge(in, out, bufferSize);
+        } finally {
+            out.close();
+        }
+    }
+
+}
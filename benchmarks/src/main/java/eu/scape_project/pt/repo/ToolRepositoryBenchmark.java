@@ -0,0 +1,58 @@
+package eu.scape_project.pt.repo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.scape_project.pt.bench.Toolspecs;
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Tool;
+
+/**
+ * Lookup of toolspecs from a repository on the local filesystem, with and
+ * without the cache of parsed toolspecs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolRepositoryBenchmark {
+
+    @Param({"false", "true"})
+    public boolean caching;
+
+    private Repository repo;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws IOException {
+        File dir = Toolspecs.createRepositoryDir();
+        Configuration conf = new Configuration();
+        Repository toolRepo = new ToolRepository(FileSystem.getLocal(conf), new Path(dir.getPath()));
+        repo = caching ? new CachingRepository(toolRepo, conf) : toolRepo;
+    }
+
+    @Benchmark
+    public Tool getTool() throws IOException {
+        String tool = Toolspecs.TOOLS[next];
+        next = (next + 1) % Toolspecs.TOOLS.length;
+        return repo.getTool(tool);
+    }
+
+}
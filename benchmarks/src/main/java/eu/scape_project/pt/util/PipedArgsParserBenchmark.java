@@ -0,0 +1,61 @@
+package eu.scape_project.pt.util;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of control lines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipedArgsParserBenchmark {
+
+    @Param({"simple", "redirected", "piped", "parameters"})
+    public String line;
+
+    private String controlLine;
+    private PipedArgsParser parser;
+
+    @Setup
+    public void setUp() {
+        if ("simple".equals(line)) {
+            controlLine = "file identify --input=\"hdfs:///data/in/file-00001.pdf\"";
+        } else if ("redirected".equals(line)) {
+            controlLine = "\"hdfs:///data/in/file-00001.ps\" > ps2pdf convert-streamed"
+                + " > \"hdfs:///data/out/file with spaces-00001.pdf\"";
+        } else if ("piped".equals(line)) {
+            controlLine = "\"hdfs:///data/in/file-00001.ps\" > ps2pdf convert-streamed"
+                + " | file identify-stdin | file identify-stdin > \"hdfs:///data/out/file-00001.txt\"";
+        } else {
+            StringBuilder sb = new StringBuilder("tar create --output=\"hdfs:///data/out/archive.tar\"");
+            for (int i = 0; i < 20; i++) {
+                sb.append(" --param-").append(i).append("=\"value ").append(i).append('"');
+            }
+            controlLine = sb.toString();
+        }
+        parser = new PipedArgsParser();
+    }
+
+    @Benchmark
+    public Command[] parse() throws IOException {
+        parser.parse(controlLine);
+        return parser.getCommands();
+    }
+
+}
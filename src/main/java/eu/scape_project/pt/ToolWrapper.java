@@ -1,30 +1,48 @@
 package eu.scape_project.pt;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
 
+import eu.scape_project.pt.mapred.output.ExecutionResult;
 import eu.scape_project.pt.proc.Processor;
 import eu.scape_project.pt.proc.StreamProcessor;
 import eu.scape_project.pt.proc.ToolProcessor;
+import eu.scape_project.pt.proc.WorkerPool;
+import eu.scape_project.pt.repo.CachingRepository;
 import eu.scape_project.pt.repo.Repository;
 import eu.scape_project.pt.repo.ToolRepository;
+import eu.scape_project.pt.util.CaptureBuffer;
 import eu.scape_project.pt.util.CmdLineParser;
 import eu.scape_project.pt.util.Command;
+import eu.scape_project.pt.util.ExecutionMetrics;
+import eu.scape_project.pt.util.ExecutionMetrics.Phase;
 import eu.scape_project.pt.util.PipedArgsParser;
 import eu.scape_project.pt.util.PropertyNames;
 import eu.scape_project.pt.util.fs.Filer;
+import eu.scape_project.pt.util.fs.HDFSFiler;
+import eu.scape_project.pt.util.fs.LocalBlockLinker;
+import eu.scape_project.pt.util.fs.LocalizationCache;
+import eu.scape_project.pt.util.fs.ScratchDirectories;
+import eu.scape_project.pt.util.fs.TransferExecutor;
 import eu.scape_project.tool.toolwrapper.data.tool_spec.Operation;
 import eu.scape_project.tool.toolwrapper.data.tool_spec.Tool;
 
@@ -37,6 +55,84 @@ public class ToolWrapper {
     private Tool tool;
     private Operation operation;
 
+    /**
+     * Input parameters, given as tool/operation/input, which are streamed
+     * into named pipes instead of being copied.
+     */
+    private Collection<String> streamedInputs;
+
+    /**
+     * Filers of the current control line holding streamed inputs.
+     */
+    private final List<Filer> streamedFilers = new ArrayList<Filer>();
+
+    /**
+     * Size in bytes of the buffers piping streams between processors.
+     */
+    private int pipeBufferSize = Processor.DEFAULT_PIPE_BUFFER_SIZE;
+
+    /**
+     * Time in seconds a tool may execute.
+     */
+    private long executionTimeout = Processor.DEFAULT_EXECUTION_TIMEOUT;
+
+    /**
+     * Whether commands without shell syntax are executed directly.
+     */
+    private boolean directExec = true;
+
+    /**
+     * Links replicas of data-local inputs, null if inputs are copied.
+     */
+    private LocalBlockLinker blockLinker;
+
+    /**
+     * Node-local cache of inputs, null if inputs are copied.
+     */
+    private LocalizationCache localizationCache;
+
+    /**
+     * Executor for concurrent localization and delocalization of files.
+     */
+    private TransferExecutor transfers;
+
+    /**
+     * Persistent workers of operations configured for worker mode, null if
+     * there are none.
+     */
+    private WorkerPool workerPool;
+
+    /**
+     * Timings of the phases of the executed control lines.
+     */
+    private final ExecutionMetrics metrics = new ExecutionMetrics();
+
+    /**
+     * Captures the standard output of control lines without stdout redirect,
+     * reused from line to line.
+     */
+    private CaptureBuffer capture;
+    private int captureMemoryLimit = CaptureBuffer.DEFAULT_MEMORY_LIMIT;
+    private File captureSpillDir;
+
+    /**
+     * Scratch directories of control lines, null if lines are executed in
+     * the working directory of the task.
+     */
+    private ScratchDirectories scratchDirs;
+
+    /**
+     * Scratch directory of the current control line.
+     */
+    private File scratchDir;
+
+    /**
+     * Working directory of this wrapper when several wrappers execute lines
+     * in the same process without scratch directories, null if lines are
+     * executed in the working directory of the task.
+     */
+    private File wrapperDir;
+
     private final Log LOG = LogFactory.getLog(ToolWrapper.class);
 
     /**
@@ -47,36 +143,177 @@ public class ToolWrapper {
         String strRepo = conf.get(PropertyNames.REPO_LOCATION);
         Path fRepo = new Path(strRepo);
         FileSystem fs = FileSystem.get(conf);
-        this.repo = new ToolRepository(fs, fRepo);
+        this.repo = new CachingRepository(new ToolRepository(fs, fRepo), conf);
+
+        pipeBufferSize = conf.getInt(PropertyNames.PIPE_BUFFER_SIZE,
+                Processor.DEFAULT_PIPE_BUFFER_SIZE);
+
+        directExec = conf.getBoolean(PropertyNames.DIRECT_EXEC, true);
+
+        executionTimeout = conf.getLong(PropertyNames.EXECUTION_TIMEOUT,
+                Processor.DEFAULT_EXECUTION_TIMEOUT);
+
+        blockLinker = conf.getBoolean(PropertyNames.LINK_LOCAL_BLOCKS, false)
+                ? new LocalBlockLinker(conf) : null;
+
+        String cacheDir = conf.getTrimmed(PropertyNames.LOCALIZATION_CACHE_DIR);
+        localizationCache = cacheDir == null ? null
+                : new LocalizationCache(new File(cacheDir), conf.getLong(
+                        PropertyNames.LOCALIZATION_CACHE_SIZE, LocalizationCache.DEFAULT_MAX_SIZE));
+
+        transfers = new TransferExecutor(conf.getInt(PropertyNames.TRANSFER_PARALLELISM,
+                TransferExecutor.DEFAULT_PARALLELISM));
+
+        streamedInputs = conf.getTrimmedStringCollection(PropertyNames.STREAMED_INPUTS);
+
+        workerPool = createWorkerPool(conf, executionTimeout);
+
+        captureMemoryLimit = conf.getInt(PropertyNames.STDOUT_MEMORY_LIMIT,
+                CaptureBuffer.DEFAULT_MEMORY_LIMIT);
+        String spillDir = conf.getTrimmed(PropertyNames.STDOUT_SPILL_DIR);
+        captureSpillDir = spillDir == null ? null : new File(spillDir);
+
+        String scratchRoot = conf.getTrimmed(PropertyNames.SCRATCH_DIR);
+        scratchDirs = scratchRoot == null ? null : new ScratchDirectories(new File(scratchRoot),
+                conf.getInt(PropertyNames.SCRATCH_MAX_PENDING_CLEANUPS,
+                    ScratchDirectories.DEFAULT_MAX_PENDING));
+
+        // concurrent wrappers must neither share localized files nor outputs
+        if( scratchDirs == null && (conf.getInt(PropertyNames.MAPPER_THREADS, 1) > 1
+                    || conf.getBoolean(PropertyNames.ISOLATED_WORKING_DIR, false)) ) {
+            wrapperDir = Files.createTempDirectory(
+                    new File(System.getProperty("user.dir")).toPath(), "wrapper-").toFile();
+            LOG.debug("executing control lines in " + wrapperDir);
+        }
 
         // create parser of command line input arguments
         parser = new PipedArgsParser();
     }
 
+    /**
+     * Executes a control line.
+     *
+     * @param controlline the control line
+     * @return the standard output of the control line or the file it has
+     *  been redirected to
+     */
     public String wrap(String controlline) throws Exception {
+        try {
+            String strStdoutFile = execute(controlline, null);
+            if( strStdoutFile != null )
+                return strStdoutFile;
+            long t = System.nanoTime();
+            String text = capture.toString();
+            capture.reset();
+            metrics.time(Phase.CAPTURE, t);
+            return text;
+        } finally {
+            metrics.endLine();
+        }
+    }
+
+    /**
+     * Executes a control line and writes its result like {@link #wrap(String)}
+     * into a Text. Standard output is copied as it is, without decoding it.
+     *
+     * @param controlline the control line
+     * @param result receives the result
+     */
+    public void wrap(String controlline, Text result) throws Exception {
+        try {
+            String strStdoutFile = execute(controlline, null);
+            if( strStdoutFile != null ) {
+                result.set(strStdoutFile);
+                return;
+            }
+            long t = System.nanoTime();
+            capture.writeTo(result);
+            capture.reset();
+            metrics.time(Phase.CAPTURE, t);
+        } finally {
+            metrics.endLine();
+        }
+    }
+
+    /**
+     * Executes a control line and fills a result record with the exit code of
+     * its last tool, its standard output and the references of the files it
+     * has written.
+     *
+     * @param controlline the control line
+     * @param result receives the result
+     */
+    public void wrap(String controlline, ExecutionResult result) throws Exception {
+        try {
+            String strStdoutFile = execute(controlline, result);
+            if( strStdoutFile != null )
+                return;
+            long t = System.nanoTime();
+            capture.writeTo(result.getStdout());
+            capture.reset();
+            metrics.time(Phase.CAPTURE, t);
+        } finally {
+            metrics.endLine();
+        }
+    }
+
+    /**
+     * Gets the timings of the phases of the control lines executed so far.
+     * The current line is recorded when wrap returns.
+     */
+    public ExecutionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Executes a control line.
+     *
+     * @param result receives exit code and output references, may be null
+     * @return the file standard output has been redirected to, null if it
+     *  has been captured
+     */
+    private String execute(String controlline, ExecutionResult result) throws Exception {
+        metrics.startLine();
+        long t = System.nanoTime();
+
+        // streamed inputs and scratch directory left over by a failed control line
+        releaseStreamedFilersQuietly();
+        releaseScratchDir();
+        if( scratchDirs != null )
+            scratchDir = scratchDirs.create();
+
         // parse input line for stdin/out file refs and tool/action commands
         parser.parse(controlline);
 
         final Command[] commands = parser.getCommands();
+        metrics.setLineKey(getLineKey(commands));
         final String strStdinFile = parser.getStdinFile();
         final String strStdoutFile = parser.getStdoutFile();
 
         Processor firstProcessor = null;
         ToolProcessor lastProcessor = null; 
 
-        Map<String, String>[] mapOutputFileParameters = new HashMap[commands.length];
+        List<Filer> inputFilers = new ArrayList<Filer>();
+        List<Filer> outputFilers = new ArrayList<Filer>();
+
+        t = metrics.time(Phase.PARSE, t);
 
         for(int c = 0; c < commands.length; c++ ) {
             Command command = commands[c];
 
+            t = System.nanoTime();
             tool = repo.getTool(command.getTool());
 
             lastProcessor = new ToolProcessor(tool);
+            lastProcessor.setPipeBufferSize(pipeBufferSize);
+            lastProcessor.setExecutionTimeout(executionTimeout);
+            lastProcessor.setDirectExec(directExec);
 
             operation = lastProcessor.findOperation(command.getAction());
             if( operation == null )
                 throw new IOException(
                         "operation " + command.getAction() + " not found");
+            metrics.time(Phase.REPO_LOOKUP, t);
 
             lastProcessor.setOperation(operation);
 
@@ -84,28 +321,35 @@ public class ToolWrapper {
 
             lastProcessor.setParameters(command.getPairs());
             lastProcessor.setWorkingDir(workingDir());
+            String workerKey = command.getTool() + "." + command.getAction();
+            if( workerPool != null && workerPool.isPooled(workerKey) )
+                lastProcessor.setWorkerPool(workerPool, workerKey);
 
             // get parameters accepted by the lastProcessor.
             Map<String, String> mapInputFileParameters = lastProcessor.getInputFileParameters(); 
-            mapOutputFileParameters[c] = lastProcessor.getOutputFileParameters(); 
+            Map<String, String> mapOutputFileParameters = lastProcessor.getOutputFileParameters(); 
 
             // copy parameters to temporal map
             Map<String, String> mapTempInputFileParameters = 
                 new HashMap<String, String>(mapInputFileParameters);
 
-            // localize parameters
+            // map parameters to local file references, files are localized below
             for( Entry<String, String> entry : mapInputFileParameters.entrySet()) {
                 LOG.debug("input = " + entry.getValue());
-                String localFileRefs = localiseFileRefs(entry.getValue(), true);
-                mapTempInputFileParameters.put( entry.getKey(), localFileRefs.substring(1));
+                String localFileRefs = createFilers(entry.getValue(),
+                        isStreamedInput(command, entry.getKey()) ? streamedFilers : inputFilers);
+                mapTempInputFileParameters.put( entry.getKey(), localFileRefs);
             }
 
             Map<String, String> mapTempOutputFileParameters = 
-                new HashMap<String, String>(mapOutputFileParameters[c]);
-            for( Entry<String, String> entry : mapOutputFileParameters[c].entrySet()) {
+                new HashMap<String, String>(mapOutputFileParameters);
+            for( Entry<String, String> entry : mapOutputFileParameters.entrySet()) {
                 LOG.debug("output = " + entry.getValue());
-                String localFileRefs = localiseFileRefs(entry.getValue(), false);
-                mapTempOutputFileParameters.put( entry.getKey(), localFileRefs.substring(1));
+                if( result != null && entry.getValue() != null )
+                    for( String outputRef : entry.getValue().split(SEP) )
+                        result.addOutputRef(outputRef);
+                String localFileRefs = createFilers(entry.getValue(), outputFilers);
+                mapTempOutputFileParameters.put( entry.getKey(), localFileRefs);
             }
 
             // feed processor with localized parameters
@@ -124,55 +368,207 @@ public class ToolWrapper {
             }
         }
 
+        // localize files of all commands of the control line at once
+        t = System.nanoTime();
+        copyRepeatedStreams(streamedFilers, inputFilers);
+        for( Filer filer : streamedFilers ) {
+            filer.localizeStreamed();
+        }
+        inputFilers = distinct(inputFilers);
+        outputFilers = distinct(outputFilers);
+        transfers.localize(inputFilers, true);
+        transfers.localize(outputFilers, false);
+        t = metrics.time(Phase.LOCALIZE, t);
+
         // Processors for stdin and stdout
         StreamProcessor streamProcessorIn = createStreamProcessorIn(strStdinFile);
         if( streamProcessorIn != null ) {
+            streamProcessorIn.setExecutionTimeout(executionTimeout);
             streamProcessorIn.next(firstProcessor);
             firstProcessor = streamProcessorIn;
         } 
 
         OutputStream oStdout = createStdOut(strStdoutFile);
         StreamProcessor streamProcessorOut = new StreamProcessor(oStdout);
+        streamProcessorOut.setPipeBufferSize(pipeBufferSize);
+        streamProcessorOut.setExecutionTimeout(executionTimeout);
         lastProcessor.next(streamProcessorOut);
 
-        int retVal = firstProcessor.execute();
+        int retVal;
+        try {
+            retVal = firstProcessor.execute();
+        } catch (Exception ex) {
+            releaseStreamedFilersQuietly();
+            throw ex;
+        } finally {
+            t = metrics.time(Phase.EXECUTE, t);
+        }
+        // an input that could not be streamed completely fails the line
+        releaseStreamedFilers();
 
-        String text = convertToResult(oStdout, strStdoutFile);
+        if( result != null ) {
+            result.setExitCode(lastProcessor.getExitCode());
+            if( strStdoutFile != null )
+                result.addOutputRef(strStdoutFile);
+        }
 
-        if (retVal != 0)
+        if (retVal != 0) {
+            String text = strStdoutFile;
+            if( strStdoutFile == null ) {
+                if( result != null ) {
+                    // the record keeps the output, the error just says what
+                    // happened: processors only report timeouts, as -1
+                    capture.writeTo(result.getStdout());
+                    text = "timed out, exit " + retVal;
+                } else {
+                    text = capture.toString();
+                }
+                // the pipe may still write into the capture after a timeout
+                capture.release();
+                capture = null;
+            }
             throw new RuntimeException(text);
+        }
 
-        delocalizeOutputParameters(mapOutputFileParameters);
+        transfers.delocalize(outputFilers);
+        releaseScratchDir();
+        metrics.time(Phase.DELOCALIZE, t);
 
-        return text;
+        return strStdoutFile;
     }
 
-    private static String localiseFileRefs(String localFile, boolean copy) throws IOException {
-    	LogFactory.getLog(ToolWrapper.class).debug("localiseFileRefs copy: "+copy+" localFile: "+localFile);
-        String[] remoteFileRefs = localFile.split(SEP);
+    /**
+     * Gets the key metrics of a control line are recorded under, its
+     * tool.operation pairs separated by pipes.
+     */
+    private static String getLineKey(Command[] commands) {
+        StringBuilder key = new StringBuilder();
+        for( Command command : commands ) {
+            if( key.length() > 0 ) key.append('|');
+            key.append(command.getTool()).append('.').append(command.getAction());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Creates filers for file references without localizing them.
+     *
+     * @param remoteFileRefs space separated remote file references, may be null
+     * @param filers receives the created filers
+     * @return space separated local file references
+     */
+    private String createFilers(String remoteFileRefs, List<Filer> filers) throws IOException {
+        LOG.debug("createFilers remoteFileRefs: " + remoteFileRefs);
+        if( remoteFileRefs == null ) return null;
         StringBuilder localFileRefs = new StringBuilder();
         String workingDir = workingDir();
-        for( int i = 0; i < remoteFileRefs.length; i++ ){
-            Filer filer = Filer.create(remoteFileRefs[i]);
+        for( String remoteFileRef : remoteFileRefs.split(SEP) ) {
+            Filer filer = Filer.create(remoteFileRef);
             filer.setWorkingDir(workingDir);
-            //filer.localize();
-            filer.localize_(copy);
-            localFileRefs.append(localFileRefs + SEP + filer.getRelativeFileRef());
+            if( filer instanceof HDFSFiler ) {
+                HDFSFiler hdfsFiler = (HDFSFiler) filer;
+                hdfsFiler.setBlockLinker(blockLinker);
+                hdfsFiler.setLocalizationCache(localizationCache);
+                hdfsFiler.setBufferSize(pipeBufferSize);
+            }
+            filers.add(filer);
+            if( localFileRefs.length() > 0 ) localFileRefs.append(SEP);
+            localFileRefs.append(filer.getRelativeFileRef());
         }
         return localFileRefs.toString();
     }
-    
-    private static String convertToResult(OutputStream oStdout, final String strStdoutFile) {
-        if( oStdout instanceof ByteArrayOutputStream )
-            return  new String( ((ByteArrayOutputStream)oStdout).toByteArray() );
-        return strStdoutFile;
+
+    /**
+     * Drops filers of files referenced more than once in a control line,
+     * they would be transferred concurrently onto the same local path.
+     */
+    private static List<Filer> distinct(List<Filer> filers) {
+        Map<String, Filer> byLocalPath = new LinkedHashMap<String, Filer>();
+        for( Filer filer : filers ) {
+            if( !byLocalPath.containsKey(filer.getAbsoluteFileRef()) )
+                byLocalPath.put(filer.getAbsoluteFileRef(), filer);
+        }
+        return new ArrayList<Filer>(byLocalPath.values());
     }
 
-    private static OutputStream createStdOut(final String strStdoutFile) throws IOException {
+    /**
+     * Moves streamed inputs of files referenced more than once in a control
+     * line to the copied inputs: a named pipe is read only once, and a copy
+     * must not be written onto it.
+     */
+    private static void copyRepeatedStreams(List<Filer> streamedFilers, List<Filer> inputFilers) {
+        Map<String, Integer> references = new HashMap<String, Integer>();
+        for( Filer filer : streamedFilers ) countReference(references, filer);
+        for( Filer filer : inputFilers ) countReference(references, filer);
+        for( Iterator<Filer> it = streamedFilers.iterator(); it.hasNext(); ) {
+            Filer filer = it.next();
+            if( references.get(filer.getAbsoluteFileRef()) > 1 ) {
+                it.remove();
+                inputFilers.add(filer);
+            }
+        }
+    }
+
+    private static void countReference(Map<String, Integer> references, Filer filer) {
+        Integer count = references.get(filer.getAbsoluteFileRef());
+        references.put(filer.getAbsoluteFileRef(), count == null ? 1 : count + 1);
+    }
+
+    private boolean isStreamedInput(Command command, String input) {
+        return streamedInputs.contains(
+                command.getTool() + "/" + command.getAction() + "/" + input);
+    }
+
+    /**
+     * Hands the scratch directory of the current control line over for
+     * deletion.
+     */
+    private void releaseScratchDir() {
+        if( scratchDir != null ) {
+            scratchDirs.release(scratchDir);
+            scratchDir = null;
+        }
+    }
+
+    /**
+     * Releases the streamed inputs of the current control line.
+     *
+     * @throws IOException the first failure of a streamed input
+     */
+    private void releaseStreamedFilers() throws IOException {
+        IOException failure = null;
+        for( Filer filer : streamedFilers ) {
+            try {
+                filer.release();
+            } catch (IOException ex) {
+                if( failure == null )
+                    failure = ex;
+                else
+                    LOG.warn("could not release streamed input", ex);
+            }
+        }
+        streamedFilers.clear();
+        if( failure != null )
+            throw failure;
+    }
+
+    private void releaseStreamedFilersQuietly() {
+        try {
+            releaseStreamedFilers();
+        } catch (IOException ex) {
+            LOG.warn("could not release streamed input", ex);
+        }
+    }
+
+    private OutputStream createStdOut(final String strStdoutFile) throws IOException {
         if( strStdoutFile != null ) 
             return Filer.create(strStdoutFile).getOutputStream();
-        // default: output to bytestream
-        return new ByteArrayOutputStream();
+        // default: capture output
+        if( capture == null )
+            capture = new CaptureBuffer(captureMemoryLimit, captureSpillDir);
+        else
+            capture.reset();
+        return capture;
     }
 
     private static StreamProcessor createStreamProcessorIn(final String strStdinFile) throws IOException {
@@ -183,27 +579,63 @@ public class ToolWrapper {
         return null;
     }
 
-    private static void delocalizeOutputParameters(Map<String, String>[] mapOutputFileParameters) throws IOException {
-        for(int i = 0; i < mapOutputFileParameters.length; i++ ) {
-            Map<String, String> outputFileParameters = mapOutputFileParameters[i];
-            delocalizeOutputParameters(outputFileParameters);
+    /**
+     * Creates the pool of workers for the operations having a worker command.
+     */
+    private static WorkerPool createWorkerPool(Configuration conf, long executionTimeout) {
+        Map<String, String> commands = new HashMap<String, String>();
+        for( Entry<String, String> entry : conf.getValByRegex(
+                "^" + Pattern.quote(PropertyNames.WORKER_COMMAND_PREFIX)).entrySet() ) {
+            commands.put(entry.getKey().substring(
+                        PropertyNames.WORKER_COMMAND_PREFIX.length()), entry.getValue());
         }
+        if( commands.isEmpty() ) return null;
+        return new WorkerPool(commands,
+                conf.getInt(PropertyNames.WORKER_POOL_SIZE, WorkerPool.DEFAULT_POOL_SIZE),
+                conf.getInt(PropertyNames.WORKER_MAX_REQUESTS, WorkerPool.DEFAULT_MAX_REQUESTS),
+                conf.getLong(PropertyNames.WORKER_HEALTH_CHECK_INTERVAL,
+                    WorkerPool.DEFAULT_HEALTH_CHECK_INTERVAL),
+                executionTimeout);
     }
 
-    private static void delocalizeOutputParameters(Map<String, String> outputFileParameters) throws IOException {
-        String workingDir = workingDir();
-        for( String strFile : outputFileParameters.values())
-        {
-            String[] localFileRefs = strFile.split(SEP);
-            for( int j = 0; j < localFileRefs.length; j++ ){
-                Filer filer = Filer.create(localFileRefs[j]);
-                filer.setWorkingDir(workingDir);
-                filer.delocalize();
+    /**
+     * Releases resources held by the wrapper.
+     */
+    public void close() {
+        releaseStreamedFilersQuietly();
+        if( transfers != null ) {
+            transfers.shutdown();
+        }
+        if( workerPool != null ) {
+            workerPool.close();
+        }
+        if( capture != null ) {
+            capture.release();
+            capture = null;
+        }
+        if( scratchDirs != null ) {
+            scratchDir = null;
+            scratchDirs.close();
+        }
+        if( wrapperDir != null ) {
+            try {
+                ScratchDirectories.delete(wrapperDir);
+            } catch (IOException ex) {
+                LOG.warn("could not delete working directory " + wrapperDir, ex);
             }
+            wrapperDir = null;
         }
     }
 
-    private static String workingDir() {
+    /**
+     * Gets the directory the current control line is executed and its
+     * files are localized in.
+     */
+    private String workingDir() {
+        if( scratchDir != null )
+            return scratchDir.getPath();
+        if( wrapperDir != null )
+            return wrapperDir.getPath();
         return System.getProperty("user.dir");
     }
 
@@ -1,5 +1,6 @@
 package eu.scape_project.pt.mapred;
 
+import eu.scape_project.pt.mapred.output.ExecutionResult;
 import eu.scape_project.pt.util.PropertyNames;
 
 import org.apache.commons.cli.CommandLine;
@@ -15,8 +16,11 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
 import org.apache.hadoop.util.ToolRunner;
 
 /**
@@ -56,12 +60,18 @@ public class CLIWrapper extends Configured implements org.apache.hadoop.util.Too
             .isRequired(true)
             .withDescription("specify the path to the toolspec repository")
             .create("r");
+        Option oT = OptionBuilder.withArgName("number of threads")
+            .hasArg()
+            .isRequired(false)
+            .withDescription("specify the number of control lines one mapper should execute concurrently")
+            .create("t");
 
         options.addOption(oH);
         options.addOption(oI);
         options.addOption(oO);
         options.addOption(oN);
         options.addOption(oR);
+        options.addOption(oT);
         return options;
     }
 
@@ -105,6 +115,9 @@ public class CLIWrapper extends Configured implements org.apache.hadoop.util.Too
         if( line.hasOption("r")){
             conf.set(PropertyNames.REPO_LOCATION, line.getOptionValue("r"));
         }
+        if( line.hasOption("t")){
+            conf.set(PropertyNames.MAPPER_THREADS, line.getOptionValue("t"));
+        }
 
     }
 
@@ -114,7 +127,9 @@ public class CLIWrapper extends Configured implements org.apache.hadoop.util.Too
                 conf.set(PropertyNames.OUTPUT_KEY_CLASS, "org.apache.hadoop.io.LongWritable");
             }
             if( conf.get(PropertyNames.OUTPUT_VALUE_CLASS) == null ) {
-                conf.set(PropertyNames.OUTPUT_VALUE_CLASS, "org.apache.hadoop.io.Text");
+                conf.set(PropertyNames.OUTPUT_VALUE_CLASS,
+                        conf.getBoolean(PropertyNames.RESULT_RECORDS, false)
+                        ? ExecutionResult.class.getName() : "org.apache.hadoop.io.Text");
             }
         }
         if( conf.get(PropertyNames.OUTDIR ) == null ) {
@@ -145,13 +160,29 @@ public class CLIWrapper extends Configured implements org.apache.hadoop.util.Too
         //NInputFormat
         LOG.info("Number of Lines: " 
                 + conf.get(PropertyNames.LINES_PER_MAP));
+        int threads = conf.getInt(PropertyNames.MAPPER_THREADS, 1);
+        LOG.info("Threads per Mapper: " + threads);
 
         Job job = new Job(conf);
         job.setJarByClass(getClass());
-        job.setMapperClass(ToolspecMapper.class);
+        if( threads > 1 ) {
+            // each thread gets its own ToolspecMapper instance and thus its own ToolWrapper
+            job.setMapperClass(MultithreadedMapper.class);
+            MultithreadedMapper.setMapperClass(job, ToolspecMapper.class);
+            MultithreadedMapper.setNumberOfThreads(job, threads);
+        } else {
+            job.setMapperClass(ToolspecMapper.class);
+        }
 
         job.setMapOutputKeyClass(LongWritable.class);
-        job.setMapOutputValueClass(Text.class);
+        if( conf.getBoolean(PropertyNames.RESULT_RECORDS, false) ) {
+            // records can be read back without parsing, block-compressed if compression is on
+            job.setMapOutputValueClass(ExecutionResult.class);
+            job.setOutputFormatClass(SequenceFileOutputFormat.class);
+            SequenceFileOutputFormat.setOutputCompressionType(job, CompressionType.BLOCK);
+        } else {
+            job.setMapOutputValueClass(Text.class);
+        }
 
         job.waitForCompletion(true);
         return job.isSuccessful() ? 0 : 1;
@@ -1,17 +1,31 @@
 package eu.scape_project.pt.mapred;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
 
 import eu.scape_project.pt.ToolWrapper;
+import eu.scape_project.pt.mapred.output.ExecutionResult;
+import eu.scape_project.pt.util.ExecutionMetrics;
+import eu.scape_project.pt.util.ExecutionMetrics.Phase;
+import eu.scape_project.pt.util.PropertyNames;
 
 /**
  * The Toolspec executor.
@@ -19,11 +33,39 @@ import eu.scape_project.pt.ToolWrapper;
  * @author Rainer Schmidt [rschmidt13]
  * @author Matthias Rella [myrho]
  */
-public class ToolspecMapper extends Mapper<LongWritable, Text, LongWritable, Text> {
+public class ToolspecMapper extends Mapper<LongWritable, Text, LongWritable, Writable> {
+
+    private static final String COUNTER_GROUP_PREFIX = "tomar.";
+    private static final String OTHER_COUNTER_KEY = "other";
+
+    /**
+     * Maximum number of pipelines with counter groups of their own.
+     */
+    private static final int MAX_COUNTER_KEYS = 8;
+    private static final Set<String> counterKeys = new HashSet<String>();
+
+    private static final AtomicInteger instances = new AtomicInteger();
 
     private final Log LOG = LogFactory.getLog(getClass());
     private ToolWrapper toolWrapper;
 
+    /**
+     * Number of this mapper within the JVM, distinguishing the side files
+     * of the threads of a MultithreadedMapper.
+     */
+    private final int instance = instances.getAndIncrement();
+
+    /**
+     * Result of the current control line, reused as it is written out at once.
+     */
+    private final Text result = new Text();
+
+    /**
+     * Result record of the current control line, null if results are
+     * written as Text.
+     */
+    private ExecutionResult record;
+
 
     /**
      * Sets up toolspec repository and parser.
@@ -42,6 +84,8 @@ public class ToolspecMapper extends Mapper<LongWritable, Text, LongWritable, Tex
         */
         this.toolWrapper = new ToolWrapper();
         this.toolWrapper.setup(conf);
+        if( conf.getBoolean(PropertyNames.RESULT_RECORDS, false) )
+            this.record = new ExecutionResult();
     }
 
     /**
@@ -62,9 +106,21 @@ public class ToolspecMapper extends Mapper<LongWritable, Text, LongWritable, Tex
     public void map(LongWritable key, Text value, Context context ) throws IOException {
         LOG.info("Mapper.map key:" + key.toString() + " value:" + value.toString());
 
+        if( this.record != null )
+            mapToRecord(key, value, context);
+        else
+            mapToText(key, value, context);
+        reportMetrics(context);
+    }
+
+    /**
+     * Executes a control line and writes its result as Text.
+     */
+    private void mapToText(LongWritable key, Text value, Context context) throws IOException {
         Text text = null;
         try {
-            text = new Text(this.toolWrapper.wrap(value.toString()));
+            this.toolWrapper.wrap(value.toString(), result);
+            text = result;
         } catch (Exception ex) {
             LOG.error("error during wrapping", ex);
             text = convertToResult(ex);
@@ -73,6 +129,88 @@ public class ToolspecMapper extends Mapper<LongWritable, Text, LongWritable, Tex
         }
     }
 
+    /**
+     * Executes a control line and writes its result as ExecutionResult.
+     */
+    private void mapToRecord(LongWritable key, Text value, Context context) throws IOException {
+        record.clear();
+        long start = System.currentTimeMillis();
+        try {
+            this.toolWrapper.wrap(value.toString(), record);
+        } catch (Exception ex) {
+            LOG.error("error during wrapping", ex);
+            record.setError(ex);
+        } finally {
+            record.setDuration(System.currentTimeMillis() - start);
+            writeMappingResult(key, record, context);
+        }
+    }
+
+    /**
+     * Adds the phase timings of the last control line to the counters of
+     * its tool/operation pipeline.
+     */
+    private void reportMetrics(Context context) {
+        ExecutionMetrics metrics = this.toolWrapper.getMetrics();
+        String lineKey = metrics.getLineKey();
+        if( lineKey == null ) return;
+        String group = getCounterGroup(lineKey);
+        context.getCounter(group, "LINES").increment(1);
+        for( Phase phase : Phase.values() )
+            context.getCounter(group, phase + "_MICROS").increment(metrics.getLineNanos(phase) / 1000);
+    }
+
+    /**
+     * Gets the counter group of a pipeline. Hadoop fails tasks exceeding
+     * its counter limits, so pipelines beyond the first few share a group.
+     */
+    private static String getCounterGroup(String lineKey) {
+        synchronized (counterKeys) {
+            if( counterKeys.contains(lineKey) || counterKeys.size() < MAX_COUNTER_KEYS ) {
+                counterKeys.add(lineKey);
+                return COUNTER_GROUP_PREFIX + lineKey;
+            }
+        }
+        return COUNTER_GROUP_PREFIX + OTHER_COUNTER_KEY;
+    }
+
+    /**
+     * Writes the latency histograms of the phases into a side file of the
+     * task's output, hidden from input formats by its leading underscore.
+     */
+    private void writeHistograms(Context context) {
+        if( !context.getConfiguration().getBoolean(PropertyNames.METRICS_HISTOGRAMS, true) )
+            return;
+        OutputCommitter committer = context.getOutputCommitter();
+        if( !(committer instanceof FileOutputCommitter) )
+            return;
+        String name = "_metrics-" + context.getTaskAttemptID().getTaskID() + "-" + instance;
+        try {
+            Path file = new Path(((FileOutputCommitter) committer).getWorkPath(), name);
+            FileSystem fs = file.getFileSystem(context.getConfiguration());
+            Writer writer = new OutputStreamWriter(fs.create(file, false), "UTF-8");
+            try {
+                this.toolWrapper.getMetrics().writeTo(writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            LOG.warn("could not write metrics " + name, ex);
+        }
+    }
+
+    /**
+     * Writes the metrics and releases resources of the toolwrapper.
+     */
+    @Override
+    public void cleanup(Context context) throws IOException {
+        try {
+            writeHistograms(context);
+        } finally {
+            this.toolWrapper.close();
+        }
+    }
+
     private Text convertToResult(Exception ex) {
         StringWriter writer = new StringWriter();
         ex.printStackTrace(new PrintWriter(writer));
@@ -80,7 +218,7 @@ public class ToolspecMapper extends Mapper<LongWritable, Text, LongWritable, Tex
     }
 
 
-    private void writeMappingResult(LongWritable key, Text text, Context context) throws IOException {
+    private void writeMappingResult(LongWritable key, Writable text, Context context) throws IOException {
         try {
             context.write( key, text);
         } catch (InterruptedException ex) {
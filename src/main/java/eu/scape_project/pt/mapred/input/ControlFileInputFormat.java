@@ -24,9 +24,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,14 +45,18 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.mapreduce.lib.input.NLineInputFormat;
 import org.apache.hadoop.util.LineReader;
 
 import eu.scape_project.pt.proc.ToolProcessor;
+import eu.scape_project.pt.repo.CachingRepository;
 import eu.scape_project.pt.repo.Repository;
 import eu.scape_project.pt.repo.ToolRepository;
 import eu.scape_project.tool.toolwrapper.data.tool_spec.Operation;
@@ -83,6 +93,11 @@ import eu.scape_project.pt.util.PropertyNames;
 public class ControlFileInputFormat extends NLineInputFormat {
     private static Log LOG = LogFactory.getLog(ControlFileInputFormat.class);
 
+    /**
+     * Default number of control lines resolved by a planning thread at once.
+     */
+    public static final int DEFAULT_PLANNING_CHUNK_SIZE = 1000;
+
     /** 
      * Logically splits the set of input files for the job, splits N lines
      * of the input as one split.
@@ -107,6 +122,9 @@ public class ControlFileInputFormat extends NLineInputFormat {
      * Rearranges the lines of a control file according to the location
      * the input file references and logically splits the rearranged control file
      * into splits of about N lines.
+     *
+     * If {@link PropertyNames#SPLIT_RANGES} is set no rearranged control file
+     * is written, the splits refer to the lines in the original control file.
      */
     public static List<FileSplit> getSplitsForFile(FileStatus status,
             Configuration conf, int numLinesPerSplit) throws IOException {
@@ -119,16 +137,31 @@ public class ControlFileInputFormat extends NLineInputFormat {
         CmdLineParser parser = new PipedArgsParser();
         String strRepo = conf.get(PropertyNames.REPO_LOCATION);
         Path fRepo = new Path(strRepo);
-        Repository repo = new ToolRepository(fs, fRepo);
+        Repository repo = new CachingRepository(new ToolRepository(fs, fRepo), conf);
+
+        LineWeigher weigher = new LineWeigher(conf);
+
+        if (conf.getBoolean(PropertyNames.SPLIT_RANGES, false)) {
+            LOG.info("Creating location-aware ranges of control file");
+            HostBalancer<LineRange> balancer = createBalancer(controlFile, conf,
+                    repo, parser, weigher, LINE_RANGES);
+            return createRangeSplits(controlFile, balancer.getLocationMap(),
+                    balancer.getWeightMap(), numLinesPerSplit);
+        }
 
         LOG.info("Creating location-aware control file");
-        Map<String, ArrayList<String>> locationMap = createLocationMap(controlFile, conf, repo, parser);
+        HostBalancer<String> balancer = createBalancer(controlFile, conf, repo, parser, weigher);
 
         Path newControlFile = new Path(controlFile + "-rearranged"
                 + System.currentTimeMillis());
 
-        splits = writeNewControlFileAndCreateSplits(newControlFile, fs, locationMap,
-                numLinesPerSplit);
+        if (weigher.isWeighted()) {
+            splits = writeNewControlFileAndCreateWeightedSplits(newControlFile, fs,
+                    balancer.getLocationMap(), balancer.getWeightMap(), numLinesPerSplit);
+        } else {
+            splits = writeNewControlFileAndCreateSplits(newControlFile, fs,
+                    balancer.getLocationMap(), numLinesPerSplit);
+        }
         LOG.info("Location-aware control file " + newControlFile.toString() + " created");
         return splits;
     }
@@ -166,7 +199,7 @@ public class ControlFileInputFormat extends NLineInputFormat {
                 }
                 // create the split and provide a location hint
                 splits.add(new FileSplit(newControlFile, start,
-                        byteCounter-start, new String[] { host }));
+                        byteCounter-start, getLocationHint(host)));
                 start = byteCounter;
             } else {
                 int i = 1;
@@ -179,7 +212,7 @@ public class ControlFileInputFormat extends NLineInputFormat {
                     } else {
                         // create the split and provide a location hint
                         splits.add(new FileSplit(newControlFile, start,
-                                (byteCounter-start), new String[] { host }));
+                                (byteCounter-start), getLocationHint(host)));
                         start = byteCounter;
                         if ( j >= numSplits ) {
                             j = numSplits % rest;
@@ -194,6 +227,153 @@ public class ControlFileInputFormat extends NLineInputFormat {
         return splits;
     }
 
+    /**
+     * Loops over locationMap, writes control lines from locationmap
+     * to new control file and creates splits of about equal total weight.
+     *
+     * The number of splits is about the same as when cutting splits of
+     * numLinesPerSplit lines, but heavy lines get splits of their own while
+     * light lines are bundled.
+     *
+     * @param newControlFile Path to the reordered control file
+     * @param fs Hadoop filesystem handle
+     * @param locationMap map of location -> arraylist of control lines
+     * @param weightMap map of location -> weights of its control lines
+     * @param numLinesPerSplit approximate number of lines per split
+     * @return list of splits
+     */
+    public static List<FileSplit> writeNewControlFileAndCreateWeightedSplits(
+            Path newControlFile, FileSystem fs,
+            Map<String, ArrayList<String>> locationMap,
+            Map<String, double[]> weightMap, int numLinesPerSplit)
+            throws IOException {
+        double weightPerSplit = getWeightPerSplit(weightMap, numLinesPerSplit);
+
+        long start = 0, byteCounter = 0;
+        List<FileSplit> splits = new ArrayList<FileSplit>();
+        FSDataOutputStream fsout = fs.create(newControlFile);
+        try {
+            for (Entry<String, ArrayList<String>> entry : locationMap.entrySet()) {
+                String host = entry.getKey();
+                ArrayList<String> lines = entry.getValue();
+                int l = 0;
+                for (int end : getSplitEnds(weightMap.get(host), weightPerSplit)) {
+                    for (; l < end; l++) {
+                        byte[] bytes = (lines.get(l) + "\n").getBytes();
+                        fsout.write(bytes);
+                        byteCounter += bytes.length;
+                    }
+                    splits.add(new FileSplit(newControlFile, start,
+                            byteCounter - start, getLocationHint(host)));
+                    start = byteCounter;
+                }
+            }
+        } finally {
+            fsout.close();
+        }
+        return splits;
+    }
+
+    /**
+     * Creates splits of about equal total weight which refer to the
+     * lines in the original control file by their byte ranges.
+     *
+     * @param controlFile Path to the control file
+     * @param locationMap map of location -> arraylist of line ranges
+     * @param weightMap map of location -> weights of its control lines
+     * @param numLinesPerSplit approximate number of lines per split
+     * @return list of splits
+     */
+    public static List<FileSplit> createRangeSplits(Path controlFile,
+            Map<String, ArrayList<LineRange>> locationMap,
+            Map<String, double[]> weightMap, int numLinesPerSplit) {
+        double weightPerSplit = getWeightPerSplit(weightMap, numLinesPerSplit);
+        List<FileSplit> splits = new ArrayList<FileSplit>();
+        for (Entry<String, ArrayList<LineRange>> entry : locationMap.entrySet()) {
+            String host = entry.getKey();
+            ArrayList<LineRange> ranges = entry.getValue();
+            int from = 0;
+            for (int end : getSplitEnds(weightMap.get(host), weightPerSplit)) {
+                splits.add(new ControlFileRangeSplit(controlFile,
+                        ranges.subList(from, end), getLocationHint(host)));
+                from = end;
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Gets the weight per split for about as many splits as there would be
+     * with numLinesPerSplit lines per split.
+     */
+    private static double getWeightPerSplit(Map<String, double[]> weightMap,
+            int numLinesPerSplit) {
+        long numLines = 0;
+        double totalWeight = 0;
+        for (double[] weights : weightMap.values()) {
+            numLines += weights.length;
+            for (double weight : weights) {
+                totalWeight += weight;
+            }
+        }
+        long numSplits = Math.max(1, (numLines + numLinesPerSplit - 1) / numLinesPerSplit);
+        return totalWeight / numSplits;
+    }
+
+    /**
+     * Cuts the lines of a host into consecutive splits of about equal weight.
+     *
+     * @param weights weights of the host's lines
+     * @param weightPerSplit targeted weight per split
+     * @return end index (exclusive) of each split
+     */
+    private static int[] getSplitEnds(double[] weights, double weightPerSplit) {
+        double hostWeight = 0;
+        for (double weight : weights) {
+            hostWeight += weight;
+        }
+        // spread the host's weight evenly over its splits
+        long hostSplits = weightPerSplit > 0
+            ? Math.max(1, Math.round(hostWeight / weightPerSplit)) : 1;
+        double target = hostWeight / hostSplits;
+
+        List<Integer> ends = new ArrayList<Integer>();
+        double weight = 0;
+        long cut = 1;
+        for (int l = 0; l < weights.length; l++) {
+            weight += weights[l];
+            boolean last = l == weights.length - 1;
+            if (last || (target > 0 && weight >= cut * target && cut < hostSplits)) {
+                ends.add(l + 1);
+                cut = target > 0 ? (long) (weight / target) + 1 : cut;
+            }
+        }
+        int[] result = new int[ends.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ends.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a reader for rearranged or range splits.
+     */
+    @Override
+    public RecordReader<LongWritable, Text> createRecordReader(
+            InputSplit split, TaskAttemptContext context) throws IOException {
+        if (split instanceof ControlFileRangeSplit) {
+            return new ControlFileRangeRecordReader();
+        }
+        return super.createRecordReader(split, context);
+    }
+
+    /**
+     * Gets the location hint of a split for a host of the locationMap.
+     */
+    private static String[] getLocationHint(String host) {
+        return HostBalancer.ANY_HOST.equals(host) ? new String[0] : new String[] { host };
+    }
+
     /**
      * Creates mapping of locations to arraylists of control lines.
      *
@@ -206,65 +386,254 @@ public class ControlFileInputFormat extends NLineInputFormat {
     public static Map<String, ArrayList<String>> createLocationMap(
             Path controlFile, Configuration conf, Repository repo,
             CmdLineParser parser) throws IOException {
+        return createBalancer(controlFile, conf, repo, parser,
+                new LineWeigher(conf)).getLocationMap();
+    }
+
+    /**
+     * Resolves the hosts and weights of all control lines and assigns the
+     * lines to hosts.
+     *
+     * @param controlFile input control file
+     * @param conf Hadoop configuration
+     * @param repo Toolspec repository
+     * @param parser parser for the control lines
+     * @param weigher estimates the weights of control lines
+     * @return balancer holding the assignment of lines to hosts
+     */
+    public static HostBalancer<String> createBalancer(
+            Path controlFile, Configuration conf, Repository repo,
+            CmdLineParser parser, LineWeigher weigher) throws IOException {
+        return createBalancer(controlFile, conf, repo, parser, weigher, LINE_TEXTS);
+    }
+
+    /**
+     * Representation of control lines kept by the balancer.
+     */
+    private interface LineItems<T> {
+        T get(Text line, long start, int length);
+    }
+
+    private static final LineItems<String> LINE_TEXTS = new LineItems<String>() {
+        @Override
+        public String get(Text line, long start, int length) {
+            return line.toString();
+        }
+    };
+
+    private static final LineItems<LineRange> LINE_RANGES = new LineItems<LineRange>() {
+        @Override
+        public LineRange get(Text line, long start, int length) {
+            return new LineRange(start, length);
+        }
+    };
+
+    private static <T> HostBalancer<T> createBalancer(
+            Path controlFile, Configuration conf, Repository repo,
+            CmdLineParser parser, LineWeigher weigher, LineItems<T> items)
+            throws IOException {
+        FileSystem fs = controlFile.getFileSystem(conf);
+        String strPlanCache = conf.get(PropertyNames.PLAN_CACHE_DIR);
+        if (strPlanCache == null) {
+            return resolveLines(controlFile, conf, repo, parser, weigher, items, null, null);
+        }
+        Path planCacheDir = new Path(strPlanCache);
+        PlanCache planCache = new PlanCache(planCacheDir.getFileSystem(conf), planCacheDir);
+        String key = PlanCache.getKey(fs, controlFile, repo, weigher);
+        PlanCache.Plan plan = planCache.load(key, fs);
+        if (plan != null) {
+            HostBalancer<T> balancer = replayPlan(controlFile, conf, plan, items);
+            if (balancer != null) {
+                return balancer;
+            }
+            LOG.warn("Plan " + key + " does not match " + controlFile);
+        }
+        return resolveLines(controlFile, conf, repo, parser, weigher, items, planCache, key);
+    }
+
+    /**
+     * Resolves the hosts and weights of all control lines and assigns the
+     * lines to hosts.
+     *
+     * @param planCache cache to store the resulting plan in, may be null
+     * @param planKey key of the plan in the cache
+     */
+    private static <T> HostBalancer<T> resolveLines(
+            Path controlFile, Configuration conf, Repository repo,
+            CmdLineParser parser, LineWeigher weigher, LineItems<T> items,
+            PlanCache planCache, String planKey) throws IOException {
         FileSystem fs = controlFile.getFileSystem(conf);
         FSDataInputStream in = fs.open(controlFile);
         LineReader lr = new LineReader(in, conf);
-        Text controlLine = new Text();
-        Map<String, ArrayList<String>> locationMap = new HashMap<String, ArrayList<String>>();
-        ArrayList<String> allHosts = new ArrayList<String>();
-        int l = 0;
-        while ((lr.readLine(controlLine)) > 0) {
-            l += 1;
-            // read line by line
-            Path[] inFiles = getInputFiles(fs, parser, repo, controlLine.toString());
-
-            // count for each host how many blocks it holds of the current control line's input files
-            String[] hostsOfFile = getSortedHosts(fs, inFiles);
-
-            for ( String host : hostsOfFile ) {
-                if( !allHosts.contains(host)) allHosts.add(host);
+        HostBalancer<T> balancer = new HostBalancer<T>(planCache != null);
+        LocatedStatusCache statusCache = new LocatedStatusCache(fs,
+                conf.getInt(PropertyNames.LOCATION_CACHE_ENTRIES,
+                    LocatedStatusCache.DEFAULT_MAX_ENTRIES));
+        int threads = conf.getInt(PropertyNames.PLANNING_THREADS, 1);
+        try {
+            if (threads > 1) {
+                createLocationMapParallel(lr, statusCache, repo, weigher, threads,
+                        conf.getInt(PropertyNames.PLANNING_CHUNK_SIZE, DEFAULT_PLANNING_CHUNK_SIZE),
+                        items, balancer);
+            } else {
+                Text controlLine = new Text();
+                long pos = 0;
+                int bytes;
+                while ((bytes = lr.readLine(controlLine)) > 0) {
+                    // read line by line
+                    Path[] inFiles = getInputFiles(statusCache, parser, repo, controlLine.toString());
+
+                    // count for each host how many blocks it holds of the current control line's input files
+                    String[] hostsOfFile = getSortedHosts(statusCache, inFiles);
+
+                    double weight = weigher.getWeight(statusCache, parser.getCommands(), inFiles);
+
+                    balancer.add(hostsOfFile, items.get(controlLine, pos, bytes), weight);
+                    pos += bytes;
+                }
             }
-            ArrayList<String> theseHosts = (ArrayList<String>)allHosts.clone();
-            for ( String host : hostsOfFile ) {
-                theseHosts.remove(host);
+        } finally {
+            lr.close();
+        }
+        if (planCache != null) {
+            Map<String, Long> fingerprints = statusCache.getFingerprints();
+            if (fingerprints == null) {
+                LOG.info("Not all input directories could be listed, plan is not cached");
+            } else {
+                planCache.store(planKey,
+                        new PlanCache.Plan(balancer.getHosts(), balancer.getAssignment(),
+                            balancer.getLineWeights(), fingerprints));
             }
+        }
+        return balancer;
+    }
 
-            String[] hosts = new String[theseHosts.size() + hostsOfFile.length];
-            int h = 0;
-            for ( String host : hostsOfFile ) {
-                hosts[h] = hostsOfFile[h];
-                h++;
-            }
-            for( String host : theseHosts ) {
-                hosts[h] = theseHosts.get(h-hostsOfFile.length);
-                h++;
+    /**
+     * Assigns the lines of a control file to hosts as stored in a plan.
+     *
+     * @return the balancer or null if the plan does not fit the control file
+     */
+    private static <T> HostBalancer<T> replayPlan(Path controlFile,
+            Configuration conf, PlanCache.Plan plan, LineItems<T> items)
+            throws IOException {
+        FileSystem fs = controlFile.getFileSystem(conf);
+        LineReader lr = new LineReader(fs.open(controlFile), conf);
+        HostBalancer<T> balancer = new HostBalancer<T>();
+        try {
+            Text controlLine = new Text();
+            long pos = 0;
+            int bytes;
+            int l = 0;
+            while ((bytes = lr.readLine(controlLine)) > 0) {
+                if (l >= plan.getNumLines()) {
+                    return null;
+                }
+                balancer.addAssigned(plan.getHost(l), items.get(controlLine, pos, bytes),
+                        plan.getWeight(l));
+                pos += bytes;
+                l++;
             }
-            
-            addToLocationMap(locationMap, hosts, controlLine.toString(), l);
+            return l == plan.getNumLines() ? balancer : null;
+        } finally {
+            lr.close();
         }
-        return locationMap;
     }
 
     /**
-     * Adds control line to the locationmap and keeps locations balanced.
+     * Resolves the hosts of control lines on a pool of threads. The calling
+     * thread reads chunks of lines and hands them to the pool, resolved chunks
+     * are added to the balancer in the order of the control file, so the
+     * result is the same as when resolving sequentially.
      *
-     * @param locationMap mapping of locations to arraylists of control lines
-     * @param hosts locations of the control line
-     * @param line control line
-     * @param lineNum current line number of original control file
+     * @param lr reader of the control file
+     * @param statusCache cache of file status of the Hadoop filesystem
+     * @param repo Toolspec repository
+     * @param weigher estimates the weights of control lines
+     * @param threads number of resolving threads
+     * @param chunkSize number of lines per chunk
+     * @param items representation of control lines kept by the balancer
+     * @param balancer receives the resolved control lines
      */
-    public static void addToLocationMap(
-        Map<String, ArrayList<String>> locationMap, String[] hosts,
-        String line, int lineNum) {
-        for (String host : hosts) {
-            ArrayList<String> lines = locationMap.containsKey(host) ? locationMap
-                    .get(host) : new ArrayList<String>();
-            // if the location is unbalanced (got too few lines) add line for that location
-            if (lines.size() < (float)lineNum / hosts.length ) {
-                lines.add(line);
-                locationMap.put(host, lines);
-                break;
+    private static <T> void createLocationMapParallel(LineReader lr,
+            final LocatedStatusCache statusCache, final Repository repo,
+            final LineWeigher weigher, int threads, int chunkSize,
+            LineItems<T> items, HostBalancer<T> balancer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LinkedList<List<T>> pendingChunks = new LinkedList<List<T>>();
+        LinkedList<Future<ResolvedLines>> pendingLines = new LinkedList<Future<ResolvedLines>>();
+        try {
+            Text controlLine = new Text();
+            List<String> chunk = new ArrayList<String>(chunkSize);
+            List<T> chunkItems = new ArrayList<T>(chunkSize);
+            long pos = 0;
+            boolean eof = false;
+            while (!eof) {
+                int bytes = lr.readLine(controlLine);
+                eof = bytes <= 0;
+                if (!eof) {
+                    chunk.add(controlLine.toString());
+                    chunkItems.add(items.get(controlLine, pos, bytes));
+                    pos += bytes;
+                }
+                if (chunk.size() >= chunkSize || (eof && !chunk.isEmpty())) {
+                    final List<String> lines = chunk;
+                    pendingChunks.add(chunkItems);
+                    pendingLines.add(executor.submit(new Callable<ResolvedLines>() {
+                        @Override
+                        public ResolvedLines call() throws IOException {
+                            // parsers keep state, each chunk gets its own
+                            CmdLineParser parser = new PipedArgsParser();
+                            ResolvedLines resolved = new ResolvedLines(lines.size());
+                            for (int i = 0; i < lines.size(); i++) {
+                                Path[] inFiles = getInputFiles(statusCache, parser, repo, lines.get(i));
+                                resolved.hosts[i] = getSortedHosts(statusCache, inFiles);
+                                resolved.weights[i] = weigher.getWeight(statusCache,
+                                        parser.getCommands(), inFiles);
+                            }
+                            return resolved;
+                        }
+                    }));
+                    chunk = new ArrayList<String>(chunkSize);
+                    chunkItems = new ArrayList<T>(chunkSize);
+                }
+                // bound the number of chunks in flight, drain all at the end
+                while (pendingLines.size() > 2 * threads
+                        || (eof && !pendingLines.isEmpty())) {
+                    List<T> lines = pendingChunks.removeFirst();
+                    ResolvedLines resolved = getResolvedLines(pendingLines.removeFirst());
+                    for (int i = 0; i < lines.size(); i++) {
+                        balancer.add(resolved.hosts[i], lines.get(i), resolved.weights[i]);
+                    }
+                }
             }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Hosts and weights of a chunk of control lines.
+     */
+    private static class ResolvedLines {
+        final String[][] hosts;
+        final double[] weights;
+
+        ResolvedLines(int size) {
+            hosts = new String[size][];
+            weights = new double[size];
+        }
+    }
+
+    private static ResolvedLines getResolvedLines(Future<ResolvedLines> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
         }
     }
 
@@ -279,6 +648,20 @@ public class ControlFileInputFormat extends NLineInputFormat {
      */
     public static Path[] getInputFiles(FileSystem fs, CmdLineParser parser,
             Repository repo, String controlLine) throws IOException {
+        return getInputFiles(new LocatedStatusCache(fs), parser, repo, controlLine);
+    }
+
+    /**
+     * Finds input file references in the control line by looking 
+     * into its toolspec.
+     *
+     * @param statusCache cache of file status of the Hadoop filesystem
+     * @param parser for parsing the control line
+     * @param repo Toolspec repository
+     * @return array of paths to input file references
+     */
+    public static Path[] getInputFiles(LocatedStatusCache statusCache, CmdLineParser parser,
+            Repository repo, String controlLine) throws IOException {
         parser.parse(controlLine);
 
         Command command = parser.getCommands()[0];
@@ -299,16 +682,17 @@ public class ControlFileInputFormat extends NLineInputFormat {
         ArrayList<Path> inFiles = new ArrayList<Path>();
         if (strStdinFile != null) {
             Path p = new Path(strStdinFile);
-            if (fs.exists(p)) {
+            if (statusCache.getStatus(p) != null) {
                 inFiles.add(p);
             }
         } 
 
         for (String fileRef : mapInputFileParameters.values()) {
             Path p = new Path(fileRef);
-            if (fs.exists(p) ) { 
-                if( fs.isDirectory(p) ) {
-                    inFiles.addAll(getFilesInDir(fs, p));
+            FileStatus status = statusCache.getStatus(p);
+            if (status != null) { 
+                if( status.isDirectory() ) {
+                    inFiles.addAll(statusCache.getFilesInDir(p));
                 } else {
                     inFiles.add(p);
                 }
@@ -318,39 +702,35 @@ public class ControlFileInputFormat extends NLineInputFormat {
     }
 
     /**
-     * Recursively collects paths in a directory.
+     * Gets block locations of input files sorted
+     * by the total number of occurrences.
      *
      * @param fs Hadoop filesystem handle
-     * @param path path, a directory
-     * @return list of paths
+     * @param inFiles array of input files
+     * @return sorted String array
      */
-    private static List<Path> getFilesInDir(FileSystem fs, Path path)
-            throws FileNotFoundException, IOException {
-        ArrayList<Path> inFiles = new ArrayList<Path>();
-        for( FileStatus s : fs.listStatus(path) ) {
-            if( s.isDirectory() ) {
-                inFiles.addAll(getFilesInDir(fs, s.getPath()));
-            } else {
-                inFiles.add(s.getPath());
-            }
-        }
-        return inFiles;
+    public static String[] getSortedHosts(FileSystem fs, Path[] inFiles)
+            throws IOException {
+        return getSortedHosts(new LocatedStatusCache(fs), inFiles);
     }
 
     /**
      * Gets block locations of input files sorted
      * by the total number of occurrences.
      *
-     * @param fs Hadoop filesystem handle
+     * @param statusCache cache of file status of the Hadoop filesystem
      * @param inFiles array of input files
      * @return sorted String array
      */
-    public static String[] getSortedHosts(FileSystem fs, Path[] inFiles)
+    public static String[] getSortedHosts(LocatedStatusCache statusCache, Path[] inFiles)
             throws IOException {
         final Map<String, Integer> hostMap = new HashMap<String, Integer>();
         for( Path inFile : inFiles ) {
-            FileStatus s = fs.getFileStatus(inFile);
-            BlockLocation[] locations = fs.getFileBlockLocations(s, 0, s.getLen());
+            FileStatus s = statusCache.getStatus(inFile);
+            if( s == null ) {
+                throw new FileNotFoundException(inFile.toString());
+            }
+            BlockLocation[] locations = statusCache.getBlockLocations(s);
             for( BlockLocation location : locations ) {
                 String[] hosts = location.getHosts();
                 for( String host : hosts ) {
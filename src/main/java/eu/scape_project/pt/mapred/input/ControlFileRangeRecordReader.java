@@ -0,0 +1,101 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.util.LineReader;
+
+/**
+ * Reads the lines of a {@link ControlFileRangeSplit} range by range.
+ *
+ * Keys are the byte offsets of the lines in the control file, values
+ * the lines without terminator, as with Hadoop's LineRecordReader.
+ */
+public class ControlFileRangeRecordReader extends RecordReader<LongWritable, Text> {
+
+    private static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    private FSDataInputStream in;
+    private long[] starts;
+    private long[] lengths;
+    private long total;
+
+    /**
+     * Index of the current range.
+     */
+    private int range = -1;
+    private LineReader reader;
+    private long pos;
+    private long rangeEnd;
+    private long consumed;
+
+    private final LongWritable key = new LongWritable();
+    private final Text value = new Text();
+
+    @Override
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context)
+            throws IOException {
+        ControlFileRangeSplit split = (ControlFileRangeSplit) genericSplit;
+        Configuration conf = context.getConfiguration();
+        FileSystem fs = split.getPath().getFileSystem(conf);
+        in = fs.open(split.getPath());
+        starts = split.getStarts();
+        lengths = split.getLengths();
+        total = split.getLength();
+    }
+
+    @Override
+    public boolean nextKeyValue() throws IOException {
+        while (reader == null || pos >= rangeEnd) {
+            if (++range >= starts.length) {
+                return false;
+            }
+            in.seek(starts[range]);
+            pos = starts[range];
+            rangeEnd = pos + lengths[range];
+            // ranges may be single lines, don't read far beyond them
+            reader = new LineReader(in, (int) Math.min(lengths[range], MAX_BUFFER_SIZE));
+        }
+        key.set(pos);
+        int bytes = reader.readLine(value, Integer.MAX_VALUE,
+                (int) Math.min(rangeEnd - pos, Integer.MAX_VALUE));
+        if (bytes == 0) {
+            // control file is shorter than the split claims
+            pos = rangeEnd;
+            return nextKeyValue();
+        }
+        pos += bytes;
+        consumed += bytes;
+        return true;
+    }
+
+    @Override
+    public LongWritable getCurrentKey() {
+        return key;
+    }
+
+    @Override
+    public Text getCurrentValue() {
+        return value;
+    }
+
+    @Override
+    public float getProgress() {
+        return total == 0 ? 1.0f : Math.min(1.0f, (float) consumed / total);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+
+/**
+ * Split of a control file consisting of several byte ranges of lines
+ * which need not be contiguous.
+ *
+ * Lets ControlFileInputFormat group the lines of a control file by their
+ * location without writing a rearranged copy of the control file. Adjacent
+ * ranges are merged, so a split of consecutive lines holds a single range.
+ *
+ * Start and length of the split as a FileSplit are those of the first
+ * range and the total length of all ranges.
+ */
+public class ControlFileRangeSplit extends FileSplit {
+
+    private long[] starts;
+    private long[] lengths;
+
+    public ControlFileRangeSplit() {
+        super();
+    }
+
+    /**
+     * Constructs a split from line ranges.
+     *
+     * @param file the control file
+     * @param ranges byte ranges of the lines
+     * @param hosts location hints of the split
+     */
+    public ControlFileRangeSplit(Path file, List<LineRange> ranges, String[] hosts) {
+        this(file, merge(ranges), hosts);
+    }
+
+    private ControlFileRangeSplit(Path file, long[][] merged, String[] hosts) {
+        super(file, merged[0].length == 0 ? 0 : merged[0][0], sum(merged[1]), hosts);
+        this.starts = merged[0];
+        this.lengths = merged[1];
+    }
+
+    /**
+     * Gets the start offsets of the ranges.
+     */
+    public long[] getStarts() {
+        return starts;
+    }
+
+    /**
+     * Gets the lengths of the ranges.
+     */
+    public long[] getLengths() {
+        return lengths;
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        super.write(out);
+        WritableUtils.writeVInt(out, starts.length);
+        long end = 0;
+        for (int i = 0; i < starts.length; i++) {
+            // ranges are mostly ascending, store gaps rather than offsets
+            WritableUtils.writeVLong(out, starts[i] - end);
+            WritableUtils.writeVLong(out, lengths[i]);
+            end = starts[i] + lengths[i];
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        super.readFields(in);
+        int n = WritableUtils.readVInt(in);
+        starts = new long[n];
+        lengths = new long[n];
+        long end = 0;
+        for (int i = 0; i < n; i++) {
+            starts[i] = end + WritableUtils.readVLong(in);
+            lengths[i] = WritableUtils.readVLong(in);
+            end = starts[i] + lengths[i];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getPath() + ":" + starts.length + " ranges, " + getLength() + " bytes";
+    }
+
+    /**
+     * Merges adjacent ranges.
+     *
+     * @return starts and lengths of the merged ranges
+     */
+    private static long[][] merge(List<LineRange> ranges) {
+        long[] starts = new long[ranges.size()];
+        long[] lengths = new long[ranges.size()];
+        int n = 0;
+        for (LineRange range : ranges) {
+            if (n > 0 && starts[n - 1] + lengths[n - 1] == range.getStart()) {
+                lengths[n - 1] += range.getLength();
+            } else {
+                starts[n] = range.getStart();
+                lengths[n] = range.getLength();
+                n++;
+            }
+        }
+        return new long[][] { Arrays.copyOf(starts, n), Arrays.copyOf(lengths, n) };
+    }
+
+    private static long sum(long[] values) {
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,347 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns control lines to hosts, preferring the hosts which hold the
+ * blocks of a line's input files while keeping the number of lines per
+ * host balanced.
+ *
+ * A line goes to the first of its preferred hosts which got fewer lines
+ * than the average so far. If there is no such host it goes to the least
+ * loaded host of all. Hosts are kept as integer IDs with a min-heap of their
+ * loads, so adding a line costs O(p + log h) for p preferred and h known hosts.
+ *
+ * Lines added before any host is known are assigned to the least loaded
+ * hosts at the end, or to {@link #ANY_HOST} if no host is known at all.
+ *
+ * Lines may carry a weight, e.g. the size of their input files. The load
+ * of a host is then the total weight of its lines instead of their number.
+ *
+ * The assignment of each line may be recorded, so that it can be stored
+ * and replayed with {@link #addAssigned(String, Object, double)} later.
+ *
+ * @param <T> representation of a control line, e.g. its text or its
+ *  byte range in the control file
+ */
+public class HostBalancer<T> {
+
+    /**
+     * Location of lines which could not be assigned to any host.
+     */
+    public static final String ANY_HOST = "";
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> hostIds = new HashMap<String, Integer>();
+    private String[] hostNames = new String[INITIAL_CAPACITY];
+    private double[] loads = new double[INITIAL_CAPACITY];
+    private List<ArrayList<T>> lines = new ArrayList<ArrayList<T>>();
+    private List<WeightList> weights = new ArrayList<WeightList>();
+
+    /**
+     * Host IDs ordered as a binary min-heap by load.
+     */
+    private int[] heap = new int[INITIAL_CAPACITY];
+
+    /**
+     * Position of each host ID in the heap.
+     */
+    private int[] heapPos = new int[INITIAL_CAPACITY];
+
+    private int numHosts = 0;
+    private double totalWeight = 0;
+    private final List<T> unassigned = new ArrayList<T>();
+    private final WeightList unassignedWeights = new WeightList();
+
+    /**
+     * Host ID and weight of each line in the order of adding, null if
+     * not recorded.
+     */
+    private int[] assignment;
+    private WeightList lineWeights;
+    private int numLines = 0;
+
+    /**
+     * Constructs a balancer which does not record the assignment of lines.
+     */
+    public HostBalancer() {
+        this(false);
+    }
+
+    /**
+     * Constructs a balancer.
+     *
+     * @param recordAssignment whether to record the host of each line
+     */
+    public HostBalancer(boolean recordAssignment) {
+        if (recordAssignment) {
+            assignment = new int[INITIAL_CAPACITY];
+            lineWeights = new WeightList();
+        }
+    }
+
+    /**
+     * Adds a control line of weight 1.
+     *
+     * @param hostsOfFile hosts of the line's input files, most preferred first
+     * @param line the control line
+     */
+    public void add(String[] hostsOfFile, T line) {
+        add(hostsOfFile, line, 1);
+    }
+
+    /**
+     * Adds a weighted control line.
+     *
+     * @param hostsOfFile hosts of the line's input files, most preferred first
+     * @param line the control line
+     * @param weight the estimated cost of the line
+     */
+    public void add(String[] hostsOfFile, T line, double weight) {
+        totalWeight += weight;
+        int[] ids = new int[hostsOfFile.length];
+        for (int i = 0; i < hostsOfFile.length; i++) {
+            ids[i] = getHostId(hostsOfFile[i]);
+        }
+        if (numHosts == 0) {
+            unassigned.add(line);
+            unassignedWeights.add(weight);
+            record(-1, weight);
+            return;
+        }
+        double average = totalWeight / numHosts;
+        for (int id : ids) {
+            if (loads[id] < average) {
+                assign(id, line, weight);
+                record(id, weight);
+                return;
+            }
+        }
+        // all preferred hosts are loaded above average, use the least loaded one
+        int id = heap[0];
+        assign(id, line, weight);
+        record(id, weight);
+    }
+
+    /**
+     * Adds a control line to a host it was assigned to before.
+     *
+     * @param host the host, {@link #ANY_HOST} if there was none
+     * @param line the control line
+     * @param weight the estimated cost of the line
+     */
+    public void addAssigned(String host, T line, double weight) {
+        if (ANY_HOST.equals(host)) {
+            add(new String[0], line, weight);
+            return;
+        }
+        totalWeight += weight;
+        int id = getHostId(host);
+        assign(id, line, weight);
+        record(id, weight);
+    }
+
+    /**
+     * Gets the known hosts, indexed by the IDs of {@link #getAssignment()}.
+     */
+    public String[] getHosts() {
+        return Arrays.copyOf(hostNames, numHosts);
+    }
+
+    /**
+     * Gets the recorded host ID of each line in the order of adding, -1 for
+     * lines of {@link #ANY_HOST}.
+     *
+     * @throws IllegalStateException if the assignment is not recorded
+     */
+    public int[] getAssignment() {
+        if (assignment == null) {
+            throw new IllegalStateException("assignment not recorded");
+        }
+        if (numHosts > 0) {
+            assignUnassigned();
+        }
+        return Arrays.copyOf(assignment, numLines);
+    }
+
+    /**
+     * Gets the recorded weight of each line in the order of adding.
+     *
+     * @throws IllegalStateException if the assignment is not recorded
+     */
+    public double[] getLineWeights() {
+        if (lineWeights == null) {
+            throw new IllegalStateException("assignment not recorded");
+        }
+        return lineWeights.toArray();
+    }
+
+    private void record(int id, double weight) {
+        if (assignment != null) {
+            if (numLines == assignment.length) {
+                assignment = Arrays.copyOf(assignment, numLines * 2);
+            }
+            assignment[numLines] = id;
+            lineWeights.add(weight);
+        }
+        numLines++;
+    }
+
+    /**
+     * Gets the mapping of hosts to their assigned lines, in the order the
+     * hosts were seen.
+     */
+    public Map<String, ArrayList<T>> getLocationMap() {
+        Map<String, ArrayList<T>> locationMap =
+            new LinkedHashMap<String, ArrayList<T>>();
+        if (numHosts == 0) {
+            if (!unassigned.isEmpty()) {
+                locationMap.put(ANY_HOST, new ArrayList<T>(unassigned));
+            }
+            return locationMap;
+        }
+        assignUnassigned();
+        for (int id = 0; id < numHosts; id++) {
+            if (!lines.get(id).isEmpty()) {
+                locationMap.put(hostNames[id], lines.get(id));
+            }
+        }
+        return locationMap;
+    }
+
+    /**
+     * Gets the weights of the lines of each host, in the same order as
+     * the lines of {@link #getLocationMap()}.
+     */
+    public Map<String, double[]> getWeightMap() {
+        Map<String, double[]> weightMap = new LinkedHashMap<String, double[]>();
+        if (numHosts == 0) {
+            if (!unassigned.isEmpty()) {
+                weightMap.put(ANY_HOST, unassignedWeights.toArray());
+            }
+            return weightMap;
+        }
+        assignUnassigned();
+        for (int id = 0; id < numHosts; id++) {
+            if (!lines.get(id).isEmpty()) {
+                weightMap.put(hostNames[id], weights.get(id).toArray());
+            }
+        }
+        return weightMap;
+    }
+
+    private void assignUnassigned() {
+        // lines are only unassigned before the first host is known, so
+        // they are the first lines added
+        for (int i = 0; i < unassigned.size(); i++) {
+            int id = heap[0];
+            assign(id, unassigned.get(i), unassignedWeights.get(i));
+            if (assignment != null) {
+                assignment[i] = id;
+            }
+        }
+        unassigned.clear();
+        unassignedWeights.clear();
+    }
+
+    /**
+     * Gets the ID of a host, registering it if it is new.
+     */
+    private int getHostId(String host) {
+        Integer id = hostIds.get(host);
+        if (id != null) {
+            return id;
+        }
+        if (numHosts == hostNames.length) {
+            int capacity = numHosts * 2;
+            hostNames = Arrays.copyOf(hostNames, capacity);
+            loads = Arrays.copyOf(loads, capacity);
+            heap = Arrays.copyOf(heap, capacity);
+            heapPos = Arrays.copyOf(heapPos, capacity);
+        }
+        int newId = numHosts++;
+        hostIds.put(host, newId);
+        hostNames[newId] = host;
+        lines.add(new ArrayList<T>());
+        weights.add(new WeightList());
+        heap[newId] = newId;
+        heapPos[newId] = newId;
+        siftUp(newId);
+        return newId;
+    }
+
+    private void assign(int id, T line, double weight) {
+        lines.get(id).add(line);
+        weights.get(id).add(weight);
+        loads[id] += weight;
+        siftDown(heapPos[id]);
+    }
+
+    private boolean less(int a, int b) {
+        return loads[a] < loads[b] || (loads[a] == loads[b] && a < b);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!less(heap[i], heap[parent])) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int smallest = i;
+            if (left < numHosts && less(heap[left], heap[smallest])) smallest = left;
+            if (right < numHosts && less(heap[right], heap[smallest])) smallest = right;
+            if (smallest == i) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int a = heap[i];
+        heap[i] = heap[j];
+        heap[j] = a;
+        heapPos[heap[i]] = i;
+        heapPos[heap[j]] = j;
+    }
+
+    /**
+     * Growable list of primitive weights.
+     */
+    private static class WeightList {
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int size = 0;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        double get(int i) {
+            return values[i];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package eu.scape_project.pt.mapred.input;
+
+/**
+ * Byte range of a control line in its control file, including the
+ * line terminator.
+ */
+public class LineRange {
+
+    private final long start;
+    private final int length;
+
+    public LineRange(long start, int length) {
+        this.start = start;
+        this.length = length;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return start + "+" + length;
+    }
+
+}
@@ -0,0 +1,110 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+
+import eu.scape_project.pt.util.Command;
+import eu.scape_project.pt.util.PropertyNames;
+
+/**
+ * Estimates the cost of processing a control line, used to cut splits
+ * of about equal total cost instead of equal numbers of lines.
+ *
+ * The mode is set by {@link PropertyNames#SPLIT_WEIGHT}:
+ * <ul>
+ * <li>{@value #LINES}: every line weighs 1 (default)
+ * <li>{@value #BYTES}: a line weighs the total size of its input files
+ * <li>{@value #COST}: a line weighs the sum of the cost factors of its
+ * commands, configured as {@code tomar.splits.cost.{tool}.{operation}}
+ * (default 1)
+ * </ul>
+ */
+public class LineWeigher {
+
+    public static final String LINES = "lines";
+    public static final String BYTES = "bytes";
+    public static final String COST = "cost";
+
+    private final Configuration conf;
+    private final String mode;
+
+    /**
+     * Constructs the weigher.
+     *
+     * @param conf Hadoop configuration
+     */
+    public LineWeigher(Configuration conf) {
+        this.conf = conf;
+        this.mode = conf.getTrimmed(PropertyNames.SPLIT_WEIGHT, LINES);
+        if( !LINES.equals(mode) && !BYTES.equals(mode) && !COST.equals(mode) ) {
+            throw new IllegalArgumentException("unknown split weight " + mode
+                    + ", expected one of " + LINES + ", " + BYTES + ", " + COST);
+        }
+    }
+
+    /**
+     * Whether lines have individual weights or all weigh the same.
+     */
+    public boolean isWeighted() {
+        return !LINES.equals(mode);
+    }
+
+    /**
+     * Gets the weight of a control line.
+     *
+     * @param statusCache cache of file status of the Hadoop filesystem
+     * @param commands parsed commands of the control line
+     * @param inFiles input files of the control line
+     * @return weight of the line
+     */
+    public double getWeight(LocatedStatusCache statusCache, Command[] commands,
+            Path[] inFiles) throws IOException {
+        if( BYTES.equals(mode) ) {
+            long bytes = 0;
+            for( Path inFile : inFiles ) {
+                FileStatus s = statusCache.getStatus(inFile);
+                if( s != null ) {
+                    bytes += s.getLen();
+                }
+            }
+            // lines without input still cost something
+            return Math.max(bytes, 1);
+        }
+        if( COST.equals(mode) ) {
+            double cost = 0;
+            for( Command command : commands ) {
+                cost += getCostFactor(command.getTool(), command.getAction());
+            }
+            return cost;
+        }
+        return 1;
+    }
+
+    /**
+     * Gets a description of the mode and its settings, which changes
+     * whenever the weights of lines might change.
+     */
+    public String getSignature() {
+        if( !COST.equals(mode) ) {
+            return mode;
+        }
+        Map<String, String> factors = new TreeMap<String, String>(conf.getValByRegex(
+                "^" + Pattern.quote(PropertyNames.SPLIT_COST_FACTOR_PREFIX)));
+        return mode + factors;
+    }
+
+    /**
+     * Gets the configured cost factor of an operation.
+     */
+    public float getCostFactor(String tool, String operation) {
+        return conf.getFloat(PropertyNames.SPLIT_COST_FACTOR_PREFIX
+                + tool + "." + operation, 1f);
+    }
+
+}
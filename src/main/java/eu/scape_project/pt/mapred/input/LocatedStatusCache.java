@@ -0,0 +1,296 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+
+/**
+ * Resolves file status and block locations of input files by listing
+ * their parent directories with block locations in one call.
+ *
+ * Control lines usually reference many files of the same directories.
+ * Instead of asking the NameNode for existence, status and block locations
+ * of every single file, the parent directory is listed once with
+ * {@link FileSystem#listLocatedStatus(Path)} and the results are kept for
+ * subsequent lookups. The total number of cached entries is bounded, the
+ * listings of the least recently used directories are dropped first.
+ * Directories of more entries than the bound are not kept, their files are
+ * resolved one by one, so a few huge directories cannot exhaust the memory.
+ *
+ * Directories which cannot be listed are resolved file by file.
+ *
+ * A fingerprint of every listed directory is kept, so that a plan derived
+ * from the listings can be checked for changes of the inputs later.
+ *
+ * The cache may be used by several threads. Directories are listed without
+ * holding a lock, so concurrent lookups in different directories do not 
+ * wait for each other.
+ */
+public class LocatedStatusCache {
+
+    private static Log LOG = LogFactory.getLog(LocatedStatusCache.class);
+
+    /**
+     * Default maximum number of cached file status entries.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    /**
+     * Marks directories which could not be listed.
+     */
+    private static final Map<String, FileStatus> UNLISTABLE =
+        new HashMap<String, FileStatus>();
+
+    /**
+     * Marks directories of more entries than can be cached.
+     */
+    private static final Map<String, FileStatus> OVERSIZED =
+        new HashMap<String, FileStatus>();
+
+    private final FileSystem fs;
+
+    private final int maxEntries;
+
+    /**
+     * Listings of directories, mapping names to status of the children.
+     */
+    private final Map<String, Map<String, FileStatus>> listings =
+        new LinkedHashMap<String, Map<String, FileStatus>>(16, 0.75f, true);
+
+    /**
+     * Number of entries of all cached listings, each marker counting as one.
+     */
+    private long numEntries = 0;
+
+    /**
+     * Fingerprints of all directories listed so far.
+     */
+    private final Map<String, Long> fingerprints = new HashMap<String, Long>();
+
+    /**
+     * Whether some file status was resolved without listing its directory.
+     */
+    private volatile boolean unlisted = false;
+
+    /**
+     * Constructs the cache with default settings.
+     *
+     * @param fs Hadoop filesystem handle
+     */
+    public LocatedStatusCache(FileSystem fs) {
+        this(fs, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs the cache.
+     *
+     * @param fs Hadoop filesystem handle
+     * @param maxEntries maximum number of cached file status entries
+     */
+    public LocatedStatusCache(FileSystem fs, int maxEntries) {
+        this.fs = fs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the filesystem handle.
+     */
+    public FileSystem getFileSystem() {
+        return fs;
+    }
+
+    /**
+     * Gets the status of a file or directory.
+     *
+     * @param path path of the file
+     * @return status or null if the file does not exist
+     */
+    public FileStatus getStatus(Path path) throws IOException {
+        Path parent = path.getParent();
+        if( parent != null ) {
+            Map<String, FileStatus> listing = getListing(parent);
+            if( listing == OVERSIZED ) {
+                // the directory is fingerprinted, only its entries are not kept
+                return fs.exists(path) ? fs.getFileStatus(path) : null;
+            }
+            if( listing != UNLISTABLE ) {
+                return listing.get(path.getName());
+            }
+        }
+        unlisted = true;
+        return fs.exists(path) ? fs.getFileStatus(path) : null;
+    }
+
+    /**
+     * Gets the block locations of a file.
+     *
+     * @param status status of the file as returned by {@link #getStatus(Path)}
+     */
+    public BlockLocation[] getBlockLocations(FileStatus status) throws IOException {
+        if( status instanceof LocatedFileStatus ) {
+            return ((LocatedFileStatus)status).getBlockLocations();
+        }
+        return fs.getFileBlockLocations(status, 0, status.getLen());
+    }
+
+    /**
+     * Recursively collects the files in a directory.
+     *
+     * @param dir path of the directory
+     * @return list of paths of files
+     */
+    public List<Path> getFilesInDir(Path dir) throws IOException {
+        List<Path> files = new ArrayList<Path>();
+        Map<String, FileStatus> listing = getListing(dir);
+        if( listing == UNLISTABLE || listing == OVERSIZED ) {
+            if( listing == UNLISTABLE ) unlisted = true;
+            for( FileStatus s : fs.listStatus(dir) ) {
+                addFiles(files, s);
+            }
+        } else {
+            for( FileStatus s : listing.values() ) {
+                addFiles(files, s);
+            }
+        }
+        return files;
+    }
+
+    private void addFiles(List<Path> files, FileStatus s) throws IOException {
+        if( s.isDirectory() ) {
+            files.addAll(getFilesInDir(s.getPath()));
+        } else {
+            files.add(s.getPath());
+        }
+    }
+
+    /**
+     * Gets the fingerprints of all directories listed so far.
+     *
+     * @return mapping of directory paths to fingerprints, or null if some
+     *  file status was resolved without a listing
+     */
+    public Map<String, Long> getFingerprints() {
+        if( unlisted ) {
+            return null;
+        }
+        synchronized (listings) {
+            return new HashMap<String, Long>(fingerprints);
+        }
+    }
+
+    /**
+     * Gets the number of cached entries.
+     */
+    long getNumEntries() {
+        synchronized (listings) {
+            return numEntries;
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a directory listing from the names, sizes
+     * and modification times of its entries.
+     *
+     * @param listing status of the directory's entries in any order
+     */
+    public static long fingerprint(Collection<FileStatus> listing) {
+        long fingerprint = 0;
+        for( FileStatus s : listing ) {
+            // order independent combination of mixed entry hashes
+            fingerprint += fingerprint(s);
+        }
+        return fingerprint;
+    }
+
+    private static long fingerprint(FileStatus s) {
+        long h = s.getPath().getName().hashCode();
+        h = h * 1000003 + s.getModificationTime();
+        h = h * 1000003 + s.getLen();
+        return h * 0x9E3779B97F4A7C15L ^ (h >>> 29);
+    }
+
+    /**
+     * Gets the cached listing of a directory, listing it if necessary.
+     */
+    private Map<String, FileStatus> getListing(Path dir) {
+        String key = dir.toUri().getPath();
+        Map<String, FileStatus> listing;
+        synchronized (listings) {
+            listing = listings.get(key);
+        }
+        if( listing != null ) {
+            return listing;
+        }
+        long fingerprint = 0;
+        try {
+            listing = new LinkedHashMap<String, FileStatus>();
+            RemoteIterator<LocatedFileStatus> it = fs.listLocatedStatus(dir);
+            while( it.hasNext() ) {
+                LocatedFileStatus s = it.next();
+                fingerprint += fingerprint(s);
+                if( listing == OVERSIZED ) {
+                    continue;
+                }
+                listing.put(s.getPath().getName(), s);
+                if( listing.size() > maxEntries ) {
+                    LOG.debug(dir + " has more than " + maxEntries
+                            + " entries, resolving files one by one");
+                    listing = OVERSIZED;
+                }
+            }
+        } catch (FileNotFoundException ex) {
+            listing = new LinkedHashMap<String, FileStatus>();
+            fingerprint = 0;
+        } catch (IOException ex) {
+            LOG.debug("could not list " + dir + ", resolving files one by one", ex);
+            listing = UNLISTABLE;
+        } catch (UnsupportedOperationException ex) {
+            LOG.debug("could not list " + dir + ", resolving files one by one", ex);
+            listing = UNLISTABLE;
+        }
+        synchronized (listings) {
+            Map<String, FileStatus> previous = listings.put(key, listing);
+            if( previous != null ) {
+                numEntries -= countEntries(previous);
+            }
+            numEntries += countEntries(listing);
+            evict();
+            if( listing != UNLISTABLE ) {
+                fingerprints.put(key, fingerprint);
+            }
+        }
+        return listing;
+    }
+
+    private static int countEntries(Map<String, FileStatus> listing) {
+        return Math.max(listing.size(), 1);
+    }
+
+    /**
+     * Drops least recently used listings until the cached entries fit
+     * into the bound, but keeps the most recent one.
+     */
+    private void evict() {
+        Iterator<Map<String, FileStatus>> it = listings.values().iterator();
+        while( numEntries > maxEntries && listings.size() > 1 ) {
+            numEntries -= countEntries(it.next());
+            it.remove();
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package eu.scape_project.pt.mapred.input;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import eu.scape_project.pt.repo.Repository;
+
+/**
+ * Stores the assignment of control lines to hosts on the Hadoop filesystem,
+ * so that a control file submitted again needs no resolution of its lines.
+ *
+ * Plans are keyed by the checksum of the control file, the version of the
+ * toolspec repository and the settings of the line weights. A stored plan is
+ * only used if the directories of the input files are unchanged, judged by
+ * fingerprints of their listings (see {@link LocatedStatusCache}).
+ *
+ * A plan file holds varint-encoded host indexes per line, weights are only
+ * stored if some line weighs other than 1. Failures to read or write plans
+ * are logged and otherwise ignored, the plan is then computed as usual.
+ */
+public class PlanCache {
+
+    private static Log LOG = LogFactory.getLog(PlanCache.class);
+
+    private static final int MAGIC = 0x544d5043;
+    private static final int FORMAT_VERSION = 1;
+
+    private final FileSystem fs;
+    private final Path dir;
+
+    /**
+     * Constructs the cache.
+     *
+     * @param fs Hadoop filesystem handle of the cache directory
+     * @param dir directory holding the plan files
+     */
+    public PlanCache(FileSystem fs, Path dir) {
+        this.fs = fs;
+        this.dir = dir;
+    }
+
+    /**
+     * Assignment of the lines of a control file to hosts.
+     */
+    public static class Plan {
+        private final String[] hosts;
+        private final int[] assignment;
+        private final double[] weights;
+        private final Map<String, Long> fingerprints;
+
+        /**
+         * Constructs a plan.
+         *
+         * @param hosts known hosts
+         * @param assignment index of the host of each line, -1 for none
+         * @param weights weight of each line
+         * @param fingerprints fingerprints of the input directories
+         */
+        public Plan(String[] hosts, int[] assignment, double[] weights,
+                Map<String, Long> fingerprints) {
+            this.hosts = hosts;
+            this.assignment = assignment;
+            this.weights = weights;
+            this.fingerprints = fingerprints;
+        }
+
+        public int getNumLines() {
+            return assignment.length;
+        }
+
+        /**
+         * Gets the host of a line, {@link HostBalancer#ANY_HOST} for none.
+         */
+        public String getHost(int line) {
+            int id = assignment[line];
+            return id < 0 ? HostBalancer.ANY_HOST : hosts[id];
+        }
+
+        public double getWeight(int line) {
+            return weights[line];
+        }
+
+        public Map<String, Long> getFingerprints() {
+            return Collections.unmodifiableMap(fingerprints);
+        }
+    }
+
+    /**
+     * Gets the key of the plan of a control file.
+     *
+     * @param fs Hadoop filesystem handle of the control file
+     * @param controlFile the control file
+     * @param repo Toolspec repository
+     * @param weigher weigher of the control lines
+     */
+    public static String getKey(FileSystem fs, Path controlFile, Repository repo,
+            LineWeigher weigher) throws IOException {
+        StringBuilder key = new StringBuilder();
+        FileChecksum checksum = fs.getFileChecksum(controlFile);
+        if (checksum != null) {
+            key.append(checksum.getAlgorithmName()).append(':')
+                .append(MD5Hash.digest(checksum.getBytes()));
+        } else {
+            // filesystems without checksums, e.g. the local one
+            FileStatus status = fs.getFileStatus(controlFile);
+            key.append(status.getPath()).append(':').append(status.getLen())
+                .append(':').append(status.getModificationTime());
+        }
+        key.append('\n').append(getRepositoryVersion(repo));
+        key.append('\n').append(weigher.getSignature());
+        return MD5Hash.digest(key.toString()).toString();
+    }
+
+    /**
+     * Gets a version of the toolspec repository which changes whenever
+     * a toolspec is added, removed or modified.
+     */
+    static String getRepositoryVersion(Repository repo) throws IOException {
+        String[] files = repo.getToolList();
+        Arrays.sort(files);
+        StringBuilder version = new StringBuilder();
+        for (String file : files) {
+            if (!file.endsWith(".xml")) {
+                continue;
+            }
+            String tool = file.substring(0, file.length() - ".xml".length());
+            version.append(tool).append(':')
+                .append(repo.getModificationTime(tool)).append('\n');
+        }
+        return MD5Hash.digest(version.toString()).toString();
+    }
+
+    /**
+     * Loads a plan if there is one for the key and the input directories
+     * are unchanged.
+     *
+     * @param key key of the plan
+     * @param inputFs Hadoop filesystem handle of the input files
+     * @return the plan or null
+     */
+    public Plan load(String key, FileSystem inputFs) {
+        Path file = getPlanFile(key);
+        try {
+            if (!fs.exists(file)) {
+                return null;
+            }
+            Plan plan;
+            FSDataInputStream in = fs.open(file);
+            try {
+                plan = read(in, key);
+            } finally {
+                in.close();
+            }
+            if (plan == null) {
+                LOG.warn("Ignoring invalid plan " + file);
+                return null;
+            }
+            for (Entry<String, Long> entry : plan.fingerprints.entrySet()) {
+                if (getFingerprint(inputFs, new Path(entry.getKey())) != entry.getValue()) {
+                    LOG.info("Input directory " + entry.getKey() + " changed, ignoring plan " + file);
+                    return null;
+                }
+            }
+            LOG.info("Using plan " + file);
+            return plan;
+        } catch (IOException ex) {
+            LOG.warn("Could not read plan " + file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a plan.
+     *
+     * @param key key of the plan
+     * @param plan the plan
+     */
+    public void store(String key, Plan plan) {
+        Path file = getPlanFile(key);
+        Path tmp = new Path(dir, "." + key + "." + System.currentTimeMillis() + ".tmp");
+        try {
+            FSDataOutputStream out = fs.create(tmp, true);
+            try {
+                write(out, key, plan);
+            } finally {
+                out.close();
+            }
+            // readers only ever see complete plans
+            fs.delete(file, false);
+            if (!fs.rename(tmp, file)) {
+                throw new IOException("could not rename " + tmp + " to " + file);
+            }
+            LOG.info("Stored plan " + file);
+        } catch (IOException ex) {
+            LOG.warn("Could not store plan " + file, ex);
+            try {
+                fs.delete(tmp, false);
+            } catch (IOException e) {
+                LOG.debug("Could not delete " + tmp, e);
+            }
+        }
+    }
+
+    private Path getPlanFile(String key) {
+        return new Path(dir, key + ".plan");
+    }
+
+    private static long getFingerprint(FileSystem fs, Path dir) throws IOException {
+        try {
+            return LocatedStatusCache.fingerprint(Arrays.asList(fs.listStatus(dir)));
+        } catch (FileNotFoundException ex) {
+            return LocatedStatusCache.fingerprint(Collections.<FileStatus>emptyList());
+        }
+    }
+
+    static void write(DataOutput out, String key, Plan plan) throws IOException {
+        out.writeInt(MAGIC);
+        WritableUtils.writeVInt(out, FORMAT_VERSION);
+        Text.writeString(out, key);
+
+        WritableUtils.writeVInt(out, plan.fingerprints.size());
+        for (Entry<String, Long> entry : plan.fingerprints.entrySet()) {
+            Text.writeString(out, entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        WritableUtils.writeVInt(out, plan.hosts.length);
+        for (String host : plan.hosts) {
+            Text.writeString(out, host);
+        }
+
+        boolean weighted = false;
+        for (double weight : plan.weights) {
+            weighted |= weight != 1;
+        }
+        WritableUtils.writeVInt(out, plan.assignment.length);
+        out.writeBoolean(weighted);
+        for (int l = 0; l < plan.assignment.length; l++) {
+            WritableUtils.writeVInt(out, plan.assignment[l] + 1);
+            if (weighted) {
+                out.writeDouble(plan.weights[l]);
+            }
+        }
+    }
+
+    /**
+     * Reads a plan.
+     *
+     * @return the plan or null if it is not a plan of given key
+     */
+    static Plan read(DataInput in, String key) throws IOException {
+        if (in.readInt() != MAGIC || WritableUtils.readVInt(in) != FORMAT_VERSION
+                || !key.equals(Text.readString(in))) {
+            return null;
+        }
+
+        int numFingerprints = WritableUtils.readVInt(in);
+        Map<String, Long> fingerprints = new HashMap<String, Long>();
+        for (int i = 0; i < numFingerprints; i++) {
+            fingerprints.put(Text.readString(in), in.readLong());
+        }
+        String[] hosts = new String[WritableUtils.readVInt(in)];
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = Text.readString(in);
+        }
+
+        int numLines = WritableUtils.readVInt(in);
+        boolean weighted = in.readBoolean();
+        int[] assignment = new int[numLines];
+        double[] weights = new double[numLines];
+        for (int l = 0; l < numLines; l++) {
+            assignment[l] = WritableUtils.readVInt(in) - 1;
+            if (assignment[l] >= hosts.length) {
+                return null;
+            }
+            weights[l] = weighted ? in.readDouble() : 1;
+        }
+        return new Plan(hosts, assignment, weights, fingerprints);
+    }
+
+}
@@ -0,0 +1,159 @@
+package eu.scape_project.pt.mapred.output;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Result of the execution of a control line, written instead of a Text
+ * line if {@link eu.scape_project.pt.util.PropertyNames#RESULT_RECORDS} is
+ * set.
+ *
+ * A record carries the exit code of the last tool of the line, the
+ * duration of the execution, the captured standard output, the references
+ * of the files written and, if the line failed, the class and message of
+ * the error. Instances are reused by the mapper, see {@link #clear()}.
+ */
+public class ExecutionResult implements Writable {
+
+    private int exitCode = 0;
+    private long duration = 0;
+    private final BytesWritable stdout = new BytesWritable();
+    private final List<String> outputRefs = new ArrayList<String>();
+    private String errorClass = null;
+    private String errorMessage = null;
+
+    /**
+     * Resets the record for the next control line.
+     */
+    public void clear() {
+        exitCode = 0;
+        duration = 0;
+        stdout.setSize(0);
+        outputRefs.clear();
+        errorClass = null;
+        errorMessage = null;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public void setExitCode(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    /**
+     * Gets the duration of the execution in milliseconds.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Gets the captured standard output, empty if it has been redirected
+     * to a file.
+     */
+    public BytesWritable getStdout() {
+        return stdout;
+    }
+
+    /**
+     * Gets the references of the files written by the control line.
+     */
+    public List<String> getOutputRefs() {
+        return Collections.unmodifiableList(outputRefs);
+    }
+
+    public void addOutputRef(String outputRef) {
+        outputRefs.add(outputRef);
+    }
+
+    /**
+     * Whether the execution failed.
+     */
+    public boolean isError() {
+        return errorClass != null;
+    }
+
+    /**
+     * Gets the class name of the error, null if the execution succeeded.
+     */
+    public String getErrorClass() {
+        return errorClass;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Marks the execution as failed.
+     */
+    public void setError(Throwable error) {
+        this.errorClass = error.getClass().getName();
+        this.errorMessage = error.getMessage();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+        WritableUtils.writeVInt(out, exitCode);
+        WritableUtils.writeVLong(out, duration);
+        WritableUtils.writeVInt(out, stdout.getLength());
+        out.write(stdout.getBytes(), 0, stdout.getLength());
+        WritableUtils.writeVInt(out, outputRefs.size());
+        for (String outputRef : outputRefs) {
+            Text.writeString(out, outputRef);
+        }
+        out.writeBoolean(errorClass != null);
+        if (errorClass != null) {
+            Text.writeString(out, errorClass);
+            Text.writeString(out, errorMessage == null ? "" : errorMessage);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput in) throws IOException {
+        clear();
+        exitCode = WritableUtils.readVInt(in);
+        duration = WritableUtils.readVLong(in);
+        int length = WritableUtils.readVInt(in);
+        stdout.setSize(length);
+        in.readFully(stdout.getBytes(), 0, length);
+        int numOutputRefs = WritableUtils.readVInt(in);
+        for (int i = 0; i < numOutputRefs; i++) {
+            outputRefs.add(Text.readString(in));
+        }
+        if (in.readBoolean()) {
+            errorClass = Text.readString(in);
+            errorMessage = Text.readString(in);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("exit=").append(exitCode).append(" duration=").append(duration)
+            .append("ms stdout=").append(stdout.getLength()).append(" bytes");
+        if (!outputRefs.isEmpty()) {
+            sb.append(" outputs=").append(outputRefs);
+        }
+        if (errorClass != null) {
+            sb.append(" error=").append(errorClass).append(": ").append(errorMessage);
+        }
+        return sb.toString();
+    }
+
+}
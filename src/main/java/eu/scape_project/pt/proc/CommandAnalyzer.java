@@ -0,0 +1,254 @@
+package eu.scape_project.pt.proc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits a command pattern into the arguments a shell would pass to the
+ * command, so that it can be executed without a shell.
+ *
+ * Only patterns of plain words are accepted: quoting with single quotes,
+ * double quotes and backslashes is resolved, but pipes, redirections,
+ * command separators, globs, variables, command substitution and the like
+ * make {@link #analyze(String)} return null.
+ *
+ * ${key} placeholders are substituted per argument. Like the shell, values
+ * of unquoted placeholders are split at blanks, while values of quoted
+ * placeholders stay one argument. Values which the shell would interpret
+ * in their context make {@link #toArgv(Map)} return null, so the caller
+ * can fall back to a shell with the same result.
+ */
+public class CommandAnalyzer {
+
+    private static final String PLACEHOLDER_START = "${";
+    private static final String PLACEHOLDER_END = "}";
+
+    /**
+     * Characters with special meaning outside of quotes.
+     */
+    private static final String UNQUOTED_SPECIAL = "|&;<>()$`\\\"'*?[]{}~#!\n\r";
+
+    /**
+     * Characters with special meaning inside of double quotes.
+     */
+    private static final String DOUBLE_QUOTED_SPECIAL = "$`\\\"";
+
+    /**
+     * Reserved words and builtins which have no executable of their own.
+     */
+    private static final Set<String> SHELL_WORDS = new HashSet<String>(Arrays.asList(
+            "if", "then", "else", "elif", "fi", "do", "done", "case", "esac",
+            "while", "until", "for", "in", "function", "select", "time",
+            ".", ":", "source", "cd", "export", "unset", "set", "alias", "eval",
+            "exec", "exit", "return", "shift", "trap", "ulimit", "umask",
+            "wait", "read", "readonly", "local", "type", "hash", "command"));
+
+    private enum Quoting { NONE, SINGLE, DOUBLE }
+
+    /**
+     * Segment of a word, either literal text or a placeholder.
+     */
+    private static class Part {
+        final String literal;
+        final String key;
+        final Quoting quoting;
+
+        Part(String literal, String key, Quoting quoting) {
+            this.literal = literal;
+            this.key = key;
+            this.quoting = quoting;
+        }
+    }
+
+    /**
+     * Words of the command, each a sequence of parts.
+     */
+    private final Part[][] words;
+
+    private CommandAnalyzer(Part[][] words) {
+        this.words = words;
+    }
+
+    /**
+     * Analyzes a command pattern.
+     *
+     * @param strCmd command pattern containing ${key} placeholders
+     * @return the analyzer or null if the command needs a shell
+     */
+    public static CommandAnalyzer analyze(String strCmd) {
+        List<Part[]> words = new ArrayList<Part[]>();
+        List<Part> word = new ArrayList<Part>();
+        boolean inWord = false;
+        StringBuilder literal = new StringBuilder();
+        Quoting quoting = Quoting.NONE;
+        int i = 0;
+        while (i < strCmd.length()) {
+            char c = strCmd.charAt(i);
+            if (strCmd.startsWith(PLACEHOLDER_START, i)) {
+                int end = strCmd.indexOf(PLACEHOLDER_END, i + PLACEHOLDER_START.length());
+                if (end >= 0) {
+                    addLiteral(word, literal, quoting);
+                    word.add(new Part(null,
+                            strCmd.substring(i + PLACEHOLDER_START.length(), end), quoting));
+                    inWord = true;
+                    i = end + PLACEHOLDER_END.length();
+                    continue;
+                }
+            }
+            switch (quoting) {
+            case SINGLE:
+                if (c == '\'') {
+                    addLiteral(word, literal, quoting);
+                    quoting = Quoting.NONE;
+                } else {
+                    literal.append(c);
+                }
+                break;
+            case DOUBLE:
+                if (c == '"') {
+                    addLiteral(word, literal, quoting);
+                    quoting = Quoting.NONE;
+                } else if (c == '$' || c == '`') {
+                    return null;
+                } else if (c == '\\') {
+                    if (i + 1 >= strCmd.length() || strCmd.charAt(i + 1) == '\n') {
+                        return null;
+                    }
+                    char next = strCmd.charAt(i + 1);
+                    if (DOUBLE_QUOTED_SPECIAL.indexOf(next) >= 0) {
+                        literal.append(next);
+                        i++;
+                    } else {
+                        literal.append(c);
+                    }
+                } else {
+                    literal.append(c);
+                }
+                break;
+            default:
+                if (c == ' ' || c == '\t') {
+                    if (inWord) {
+                        addLiteral(word, literal, quoting);
+                        words.add(word.toArray(new Part[word.size()]));
+                        word.clear();
+                        inWord = false;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    addLiteral(word, literal, quoting);
+                    quoting = c == '\'' ? Quoting.SINGLE : Quoting.DOUBLE;
+                    // an empty quoted string is still an argument
+                    word.add(new Part("", null, quoting));
+                    inWord = true;
+                } else if (c == '\\') {
+                    if (i + 1 >= strCmd.length() || strCmd.charAt(i + 1) == '\n') {
+                        return null;
+                    }
+                    literal.append(strCmd.charAt(++i));
+                    inWord = true;
+                } else if (UNQUOTED_SPECIAL.indexOf(c) >= 0
+                        || (c == '=' && words.isEmpty())) {
+                    // shell syntax, or a variable assignment in front of the command
+                    return null;
+                } else {
+                    literal.append(c);
+                    inWord = true;
+                }
+            }
+            i++;
+        }
+        if (quoting != Quoting.NONE) {
+            return null;
+        }
+        if (inWord) {
+            addLiteral(word, literal, quoting);
+            words.add(word.toArray(new Part[word.size()]));
+        }
+        if (words.isEmpty()) {
+            return null;
+        }
+        return new CommandAnalyzer(words.toArray(new Part[words.size()][]));
+    }
+
+    private static void addLiteral(List<Part> word, StringBuilder literal, Quoting quoting) {
+        if (literal.length() > 0) {
+            word.add(new Part(literal.toString(), null, quoting));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Substitutes placeholders and splits the command into arguments.
+     *
+     * @param values parameter values by name, null values count as empty
+     * @return the arguments or null if the command needs a shell with these
+     *  values
+     */
+    public String[] toArgv(Map<String, String> values) {
+        List<String> argv = new ArrayList<String>();
+        StringBuilder field = new StringBuilder();
+        for (Part[] word : words) {
+            boolean inField = false;
+            for (Part part : word) {
+                if (part.key == null) {
+                    field.append(part.literal);
+                    inField = true;
+                    continue;
+                }
+                if (!values.containsKey(part.key)) {
+                    // the shell would expand it as variable
+                    return null;
+                }
+                String value = values.get(part.key);
+                if (value == null) value = "";
+                if (part.quoting == Quoting.SINGLE) {
+                    if (value.indexOf('\'') >= 0) return null;
+                    field.append(value);
+                    inField = true;
+                } else if (part.quoting == Quoting.DOUBLE) {
+                    if (containsAny(value, DOUBLE_QUOTED_SPECIAL)) return null;
+                    field.append(value);
+                    inField = true;
+                } else {
+                    if (containsAny(value, UNQUOTED_SPECIAL)) return null;
+                    // field splitting at blanks
+                    for (int j = 0; j < value.length(); j++) {
+                        char c = value.charAt(j);
+                        if (c == ' ' || c == '\t') {
+                            if (inField) {
+                                argv.add(field.toString());
+                                field.setLength(0);
+                                inField = false;
+                            }
+                        } else {
+                            field.append(c);
+                            inField = true;
+                        }
+                    }
+                }
+            }
+            if (inField) {
+                argv.add(field.toString());
+                field.setLength(0);
+            }
+        }
+        if (argv.isEmpty() || argv.get(0).indexOf('=') >= 0
+                || SHELL_WORDS.contains(argv.get(0))) {
+            return null;
+        }
+        return argv.toArray(new String[argv.size()]);
+    }
+
+    private static boolean containsAny(String value, String chars) {
+        for (int i = 0; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,172 @@
+package eu.scape_project.pt.proc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Operation;
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Tool;
+
+/**
+ * A command pattern of a toolspec operation which has been split once into
+ * literal text and ${key} placeholders.
+ *
+ * Rendering a template with a map of parameters is a single pass over
+ * its segments, no regular expressions are involved and parameter values
+ * are copied verbatim.
+ */
+public class CommandTemplate {
+
+    private static final String PLACEHOLDER_START = "${";
+    private static final String PLACEHOLDER_END = "}";
+
+    /**
+     * Maximum number of templates kept in the cache.
+     */
+    private static final int MAX_CACHED_TEMPLATES = 256;
+
+    /**
+     * Templates by tool and operation name, least recently used ones are evicted.
+     */
+    private static final Map<String, CommandTemplate> cache =
+        new LinkedHashMap<String, CommandTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CommandTemplate> eldest) {
+                return size() > MAX_CACHED_TEMPLATES;
+            }
+        };
+
+    /**
+     * The command pattern this template has been created from.
+     */
+    private final String strCmd;
+
+    /**
+     * Literal text segments, literals[i] precedes keys[i].
+     * There is one more literal than keys.
+     */
+    private final String[] literals;
+
+    /**
+     * Parameter names of the placeholders.
+     */
+    private final String[] keys;
+
+    /**
+     * Length of all literal segments.
+     */
+    private final int literalLength;
+
+    /**
+     * Arguments of the command, null if the command needs a shell.
+     */
+    private final CommandAnalyzer analyzer;
+
+    /**
+     * Splits a command pattern into literal and placeholder segments.
+     *
+     * @param strCmd command pattern containing ${key} placeholders
+     */
+    public CommandTemplate(String strCmd) {
+        this.strCmd = strCmd;
+        List<String> lits = new ArrayList<String>();
+        List<String> ks = new ArrayList<String>();
+        StringBuilder literal = new StringBuilder();
+        int length = 0;
+        int pos = 0;
+        while (pos < strCmd.length()) {
+            int start = strCmd.indexOf(PLACEHOLDER_START, pos);
+            int end = start < 0 ? -1
+                : strCmd.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length());
+            if (start < 0 || end < 0) {
+                literal.append(strCmd, pos, strCmd.length());
+                break;
+            }
+            literal.append(strCmd, pos, start);
+            lits.add(literal.toString());
+            length += literal.length();
+            literal.setLength(0);
+            ks.add(strCmd.substring(start + PLACEHOLDER_START.length(), end));
+            pos = end + PLACEHOLDER_END.length();
+        }
+        lits.add(literal.toString());
+        length += literal.length();
+
+        this.literals = lits.toArray(new String[lits.size()]);
+        this.keys = ks.toArray(new String[ks.size()]);
+        this.literalLength = length;
+        this.analyzer = CommandAnalyzer.analyze(strCmd);
+    }
+
+    /**
+     * Gets the template for an operation of a tool, creating and caching
+     * it on first use.
+     *
+     * @param tool tool the operation belongs to
+     * @param operation operation whose command to use
+     * @return template of the operation's command
+     */
+    public static CommandTemplate forOperation(Tool tool, Operation operation) {
+        String strCmd = operation.getCommand();
+        String key = tool.getName() + "\u0000" + operation.getName();
+        synchronized (cache) {
+            CommandTemplate template = cache.get(key);
+            // a changed toolspec may reuse tool and operation names
+            if (template == null || !template.strCmd.equals(strCmd)) {
+                template = new CommandTemplate(strCmd);
+                cache.put(key, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * Replaces ${key}s by values of given parameters. Placeholders of
+     * unknown parameters are kept as they are, null values are rendered
+     * as empty strings.
+     *
+     * @param mapInputs parameter values by name
+     * @return rendered command
+     */
+    public String render(Map<String, String> mapInputs) {
+        if (keys.length == 0) return strCmd;
+        StringBuilder sb = new StringBuilder(literalLength + 32 * keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(literals[i]);
+            if (mapInputs.containsKey(keys[i])) {
+                String value = mapInputs.get(keys[i]);
+                if (value != null) sb.append(value);
+            } else {
+                sb.append(PLACEHOLDER_START).append(keys[i]).append(PLACEHOLDER_END);
+            }
+        }
+        sb.append(literals[keys.length]);
+        return sb.toString();
+    }
+
+    /**
+     * Replaces ${key}s by values of given parameters and splits the command
+     * into the arguments a shell would execute it with, see
+     * {@link CommandAnalyzer}.
+     *
+     * @param mapInputs parameter values by name
+     * @return the arguments or null if the command needs a shell
+     */
+    public String[] renderArgv(Map<String, String> mapInputs) {
+        return analyzer == null ? null : analyzer.toArgv(mapInputs);
+    }
+
+    /**
+     * Gets the names of the placeholders in order of appearance.
+     */
+    public String[] getKeys() {
+        return keys.clone();
+    }
+
+    @Override
+    public String toString() {
+        return strCmd;
+    }
+
+}
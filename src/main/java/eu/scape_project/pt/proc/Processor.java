@@ -3,6 +3,8 @@ package eu.scape_project.pt.proc;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -10,9 +12,12 @@ import org.apache.commons.logging.LogFactory;
 public abstract class Processor implements Runnable {
 
     private static Log LOG = LogFactory.getLog(ToolProcessor.class);
-    public static int EXECUTION_TIMEOUT_MINUTES = 1;
 
-    
+    /**
+     * Default time in seconds a processor waits for its execution to end.
+     */
+    public static final long DEFAULT_EXECUTION_TIMEOUT = 60;
+
     protected char debugToken = 'P';
     /**
      * Inputstream to read from. 
@@ -34,6 +39,17 @@ public abstract class Processor implements Runnable {
      */
     protected Processor prev;
 
+    /**
+     * Size in bytes of the buffer the output of the previous processor is
+     * piped into this one with.
+     */
+    protected int pipeBufferSize = DEFAULT_PIPE_BUFFER_SIZE;
+
+    /**
+     * Time in seconds the processor waits for its execution to end.
+     */
+    protected long executionTimeout = DEFAULT_EXECUTION_TIMEOUT;
+
     /**
      * Executes its process and provides the InputStream for the next processor.
      * @return exit code of process (0 for success)
@@ -72,6 +88,22 @@ public abstract class Processor implements Runnable {
         this.oStdIn = in;
     }
 
+    /**
+     * Sets the size in bytes of the buffer the output of the previous
+     * processor is piped into this one with.
+     */
+    public void setPipeBufferSize(int pipeBufferSize) {
+        this.pipeBufferSize = pipeBufferSize;
+    }
+
+    /**
+     * Sets the time in seconds the processor waits for its execution to
+     * end before it is terminated.
+     */
+    public void setExecutionTimeout(long executionTimeout) {
+        this.executionTimeout = executionTimeout;
+    }
+
     /**
      * Get next processor
      */
@@ -107,7 +139,7 @@ public abstract class Processor implements Runnable {
             LOG.debug(debugToken + " copy prev.stdout to stdin");
             LOG.debug("instance of stdout: " + this.prev.getStdOut().getClass().getName() );
             LOG.debug("instance of stdin: " + oStdIn.getClass().getName() );
-            copyLarge(this.prev.getStdOut(), oStdIn);
+            copyLarge(this.prev.getStdOut(), oStdIn, pipeBufferSize);
             this.prev.getStdOut().close();
             oStdIn.close();
         } catch (IOException ex) {
@@ -119,36 +151,55 @@ public abstract class Processor implements Runnable {
     public abstract int waitFor() throws InterruptedException;
 
     /**
-     * The default buffer size to use for 
-     * {@link #copyLarge(InputStream, OutputStream)}
+     * Default size in bytes of the buffers used to pipe the output of a
+     * processor into the input of the next one.
      */
-    private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
-    
+    public static final int DEFAULT_PIPE_BUFFER_SIZE = 1024 * 64;
+
+    /**
+     * Pipe buffers which are currently not used by a running pipe.
+     */
+    private static final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<byte[]>();
+
     /**
      * Copy bytes from a large (over 2GB) <code>InputStream</code> to an
      * <code>OutputStream</code>.
      * <p>
-     * This method buffers the input internally, so there is no need to use a
-     * <code>BufferedInputStream</code>.
+     * A pooled buffer of the given size is used, so there is no need to use
+     * a <code>BufferedInputStream</code>.
      * 
      * @param input  the <code>InputStream</code> to read from
      * @param output  the <code>OutputStream</code> to write to
+     * @param bufferSize  size of the buffer in bytes
      * @return the number of bytes copied
      * @throws NullPointerException if the input or output is null
      * @throws IOException if an I/O error occurs
-     * @since Commons IO 1.3
      */
-    
-    private static long copyLarge(InputStream input, OutputStream output)
+    static long copyLarge(InputStream input, OutputStream output, int bufferSize)
             throws IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        long count = 0;
-        int n = 0;    	
-        while (-1 != (n = input.read(buffer))) {        	
-            output.write(buffer, 0, n);
-            count += n;
+        byte[] buffer = acquireBuffer(bufferSize);
+        try {
+            long count = 0;
+            int n = 0;
+            while (-1 != (n = input.read(buffer))) {
+                output.write(buffer, 0, n);
+                count += n;
+            }
+            return count;
+        } finally {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Takes a buffer from the pool, buffers of another size are dropped.
+     */
+    private static byte[] acquireBuffer(int bufferSize) {
+        byte[] buffer = bufferPool.poll();
+        if (buffer == null || buffer.length != bufferSize) {
+            buffer = new byte[bufferSize];
         }
-        return count;
+        return buffer;
     }
     
 }
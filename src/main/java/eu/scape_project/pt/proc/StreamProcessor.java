@@ -69,12 +69,12 @@ public class StreamProcessor extends Processor {
         	t.interrupt();
         	return -1;
     	}
-    	long timeout = EXECUTION_TIMEOUT_MINUTES*60*1000;
+    	long timeout = executionTimeout*1000;
     	long start = System.currentTimeMillis();
     	t.join(timeout);
     	long stop = System.currentTimeMillis();
         if((stop - start) >= timeout) {
-        	LOG.warn("Stream execution has reached timeout of "+ EXECUTION_TIMEOUT_MINUTES+" minutes. The process has been terminated!");
+        	LOG.warn("Stream execution has reached timeout of "+ executionTimeout+" seconds. The process has been terminated!");
         	t.interrupt();
         	return -1;
         }
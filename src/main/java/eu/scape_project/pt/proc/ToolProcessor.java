@@ -12,8 +12,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -60,6 +58,25 @@ public class ToolProcessor extends Processor {
 
     private File workingDir = null;
 
+    /**
+     * Whether commands without shell syntax are executed directly instead
+     * of through a shell, see {@link CommandAnalyzer}.
+     */
+    private boolean directExec = true;
+
+    /**
+     * Pool of persistent workers executing the operation, null if the
+     * operation is executed by a new process.
+     */
+    private WorkerPool workerPool;
+    private String workerKey;
+
+    /**
+     * Response of the worker, streamed as standard output, null if not
+     * executed by a worker.
+     */
+    private WorkerPool.Response workerResponse;
+
     /**
      * Constructs the processor with a tool and an action of a
      * toolspec.
@@ -110,19 +127,52 @@ public class ToolProcessor extends Processor {
             LOG.debug("Key: " + entry.getKey() + " = " + entry.getValue());
         }
 
-        String strCmd = replaceAll(this.operation.getCommand(), allInputs);
+        String strCmd = replaceAll(allInputs);
+
+        // workers can't read piped input, as their stdin carries requests
+        if( workerPool != null && this.prev == null
+                && strCmd.indexOf('\n') < 0 && strCmd.indexOf('\r') < 0 ) {
+            LOG.info("executing on worker " + strCmd );
+            workerResponse = workerPool.execute(workerKey, this.workingDir, strCmd);
+            this.setStdOut(workerResponse);
+            if( this.next != null ) {
+                try {
+                    return this.next.execute();
+                } catch (Exception ex) {
+                    workerResponse.close();
+                    throw ex;
+                }
+            }
+            // nobody reads the output
+            while( workerResponse.skip(Long.MAX_VALUE) > 0 ) {
+            }
+            return workerResponse.getExitCode();
+        }
         LOG.info("executing " + strCmd );
 
         String[] cmd;
+        String[] argv = null;
         if( System.getProperty("os.name").startsWith("Windows")){
             cmd = new String[]{"cmd.exe", "/C", strCmd};
         } else {
             cmd = new String[]{"sh", "-c", strCmd};
+            if( directExec )
+                argv = CommandTemplate.forOperation(this.tool, this.operation).renderArgv(allInputs);
         }
-        ProcessBuilder pb = new ProcessBuilder(cmd);
+        ProcessBuilder pb = new ProcessBuilder();
         pb.redirectErrorStream(true);
         pb.directory(this.workingDir);
-        proc = pb.start();
+        proc = null;
+        if( argv != null ) {
+            try {
+                proc = pb.command(argv).start();
+            } catch (IOException ex) {
+                // let the shell report a missing program like it always did
+                LOG.debug("could not execute " + argv[0] + " directly", ex);
+            }
+        }
+        if( proc == null )
+            proc = pb.command(cmd).start();
 
         this.setStdIn(proc.getOutputStream());
         this.setStdOut(proc.getInputStream());
@@ -141,20 +191,55 @@ public class ToolProcessor extends Processor {
      */
     @Override
     public int waitFor() throws InterruptedException {
+        if( workerResponse != null ) return waitForWorker();
         if( proc == null ) return 0;
         LOG.debug("waitFor");
         //return proc.waitFor();
-        boolean procCompleted = proc.waitFor((new Long(EXECUTION_TIMEOUT_MINUTES)).longValue(), TimeUnit.MINUTES);
+        boolean procCompleted = proc.waitFor(executionTimeout, TimeUnit.SECONDS);
         if(!procCompleted) {
-        	LOG.warn("Tool execution has reached timeout of "+ EXECUTION_TIMEOUT_MINUTES+" minutes. The process has been terminated!");
+        	LOG.warn("Tool execution has reached timeout of "+ executionTimeout+" seconds. The process has been terminated!");
+        	proc.destroy();
         	return -1;
         }
         return 0;
     }
+
+    /**
+     * Waits for the response of the worker to be read to its end.
+     */
+    private int waitForWorker() throws InterruptedException {
+        if( !workerResponse.await(executionTimeout, TimeUnit.SECONDS) ) {
+            LOG.warn("Worker execution has reached timeout of "+ executionTimeout+" seconds. The worker has been terminated!");
+            workerResponse.close();
+            return -1;
+        }
+        if( !workerResponse.isComplete() ) {
+            LOG.warn("worker terminated without response");
+            return -1;
+        }
+        if( workerResponse.getExitCode() != 0 )
+            LOG.warn("worker exited with " + workerResponse.getExitCode());
+        return 0;
+    }
     
     
     
 
+    /**
+     * Gets the exit code of the executed tool.
+     *
+     * @return the exit code, -1 if the tool has not terminated yet
+     */
+    public int getExitCode() {
+        if( workerResponse != null ) return workerResponse.getExitCode();
+        if( proc == null ) return -1;
+        try {
+            return proc.exitValue();
+        } catch (IllegalThreadStateException ex) {
+            return -1;
+        }
+    }
+
     @Override
     public void initialize() {
     }
@@ -243,46 +328,21 @@ public class ToolProcessor extends Processor {
     }
 
     /**
-     * Replaces ${key}s in given command strCmd by values.
-     */
-     private String replaceAll(String strCmd, Map<String,String> mapInputs) {
-         if( mapInputs.isEmpty() ) return strCmd;
-        // create the pattern wrapping the keys with ${} and join them with '|'
-        StringBuilder regexp = new StringBuilder();
-        for( String input : mapInputs.keySet())
-            regexp.append(parameterToPlaceholder(input));
-        regexp.setLength(regexp.length() - 1);
-
-        LOG.debug("replaceAll.regexp = " + regexp );
-        StringBuffer sb = new StringBuffer();
-        Pattern p = Pattern.compile(regexp.toString());
-        Matcher m = p.matcher(strCmd);
-
-        while (m.find())
-        {
-            String param = placeholderToParameter(m.group());
-            m.appendReplacement(sb, mapInputs.get(param));
-        }
-        m.appendTail(sb);
-
-        return sb.toString();
-
-    }
-
-    /**
-     * Maps a parameter name to the placeholder's form.
-     * Inverse of placeholderToParameter.
+     * Replaces ${key}s in the operation's command by values.
      */
-    private String parameterToPlaceholder( String strParameter ) {
-        return "\\$\\{" + strParameter + "\\}|"; 
+    private String replaceAll(Map<String,String> mapInputs) {
+        return CommandTemplate.forOperation(this.tool, this.operation).render(mapInputs);
     }
 
     /**
-     * Maps a placeholder to its parameter name.
-     * Inverse of parameterToPlaceholder.
+     * Lets the operation be executed by persistent workers of a pool.
+     *
+     * @param workerPool the pool
+     * @param workerKey key of the operation's workers in the pool
      */
-    private String placeholderToParameter( String strVariable ) {
-        return strVariable.substring(2, strVariable.length() - 1 );
+    public void setWorkerPool(WorkerPool workerPool, String workerKey) {
+        this.workerPool = workerPool;
+        this.workerKey = workerKey;
     }
 
     public void setWorkingDir(String workingDir) throws IOException {
@@ -293,4 +353,12 @@ public class ToolProcessor extends Processor {
         else if( !dir.isDirectory() ) throw new IOException("Working directory " + dir + " is not a directory");
         this.workingDir = dir;
     }
+
+    /**
+     * Sets whether commands without shell syntax are executed directly
+     * instead of through a shell, true by default.
+     */
+    public void setDirectExec(boolean directExec) {
+        this.directExec = directExec;
+    }
 }
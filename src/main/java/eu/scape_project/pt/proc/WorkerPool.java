@@ -0,0 +1,545 @@
+package eu.scape_project.pt.proc;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Pool of long-lived tool processes ("workers") which execute several
+ * commands each, avoiding the startup costs of a process per control line.
+ *
+ * A worker is started with a configured command and talks a line protocol:
+ * <ul>
+ * <li>a request is a single line of the working directory, a tab and the
+ * command line to execute; workers run in the working directory of the
+ * task and must change into the requested one for each command
+ * <li>the worker answers with the command's output followed by
+ * {@code #TOMAR-EXIT <exit code>} and a line break; the marker ends the last
+ * line of the output if that has no line break of its own
+ * <li>a request line {@code #TOMAR-PING} is answered by the exit line only
+ * </ul>
+ *
+ * Responses are streamed: the output is read from the worker while the
+ * caller reads the {@link Response}, and the worker is given back to the
+ * pool when the exit line has been read.
+ *
+ * Idle workers are checked before reuse: dead workers are dropped and workers
+ * idle for longer than the health check interval must answer a ping. A worker
+ * is recycled after a maximum number of requests, and killed if a request
+ * exceeds the execution timeout.
+ */
+public class WorkerPool {
+
+    private static Log LOG = LogFactory.getLog(WorkerPool.class);
+
+    public static final String EXIT_MARKER = "#TOMAR-EXIT ";
+    public static final String PING = "#TOMAR-PING";
+
+    /**
+     * Default maximum number of idle workers per command.
+     */
+    public static final int DEFAULT_POOL_SIZE = 1;
+
+    /**
+     * Default maximum number of requests per worker.
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 1000;
+
+    /**
+     * Default idle time in milliseconds after which a worker is pinged.
+     */
+    public static final long DEFAULT_HEALTH_CHECK_INTERVAL = 60 * 1000;
+
+    private final Map<String, String> commands;
+    private final int poolSize;
+    private final int maxRequests;
+    private final long healthCheckInterval;
+    private final long executionTimeout;
+
+    private final Map<String, LinkedList<Worker>> idle = new HashMap<String, LinkedList<Worker>>();
+    private final ScheduledExecutorService watchdog;
+    private int started = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructs the pool with the default execution timeout.
+     *
+     * @param commands commands starting the workers by key of the operation
+     * @param poolSize maximum number of idle workers per key
+     * @param maxRequests maximum number of requests per worker
+     * @param healthCheckInterval idle time in milliseconds after which a
+     *  worker is pinged before reuse
+     */
+    public WorkerPool(Map<String, String> commands, int poolSize, int maxRequests,
+            long healthCheckInterval) {
+        this(commands, poolSize, maxRequests, healthCheckInterval,
+                Processor.DEFAULT_EXECUTION_TIMEOUT);
+    }
+
+    /**
+     * Constructs the pool.
+     *
+     * @param commands commands starting the workers by key of the operation
+     * @param poolSize maximum number of idle workers per key
+     * @param maxRequests maximum number of requests per worker
+     * @param healthCheckInterval idle time in milliseconds after which a
+     *  worker is pinged before reuse
+     * @param executionTimeout time in seconds after which a worker still
+     *  executing a request is killed
+     */
+    public WorkerPool(Map<String, String> commands, int poolSize, int maxRequests,
+            long healthCheckInterval, long executionTimeout) {
+        this.commands = new HashMap<String, String>(commands);
+        this.poolSize = poolSize;
+        this.maxRequests = maxRequests;
+        this.healthCheckInterval = healthCheckInterval;
+        this.executionTimeout = executionTimeout;
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "worker-watchdog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Whether there is a worker command for given key.
+     */
+    public boolean isPooled(String key) {
+        return commands.containsKey(key);
+    }
+
+    /**
+     * Executes a command on a worker.
+     *
+     * @param key key of the operation
+     * @param workingDir working directory of the command
+     * @param command command line, must not contain line breaks
+     * @return the worker's response, to be read to its end or closed
+     */
+    public Response execute(String key, File workingDir, String command) throws IOException {
+        if (command.indexOf('\n') >= 0 || command.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("command contains line breaks: " + command);
+        }
+        String dir = (workingDir == null ? new File(".") : workingDir).getAbsolutePath();
+        Worker worker = borrow(key);
+        try {
+            return worker.request(dir + "\t" + command, key);
+        } catch (IOException ex) {
+            worker.destroy();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gets the number of workers started so far.
+     */
+    public synchronized int getStarted() {
+        return started;
+    }
+
+    /**
+     * Stops all idle workers. Workers currently executing are stopped when
+     * given back.
+     */
+    public void close() {
+        List<Worker> workers = new ArrayList<Worker>();
+        synchronized (this) {
+            closed = true;
+            for (LinkedList<Worker> list : idle.values()) {
+                workers.addAll(list);
+            }
+            idle.clear();
+        }
+        for (Worker worker : workers) {
+            worker.destroy();
+        }
+        watchdog.shutdownNow();
+    }
+
+    private Worker borrow(String key) throws IOException {
+        while (true) {
+            Worker worker;
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("worker pool is closed");
+                }
+                LinkedList<Worker> list = idle.get(key);
+                worker = list == null ? null : list.poll();
+                if (worker == null) {
+                    started++;
+                    break;
+                }
+            }
+            if (isHealthy(worker)) {
+                return worker;
+            }
+            LOG.info("dropping unhealthy worker for " + key);
+            worker.destroy();
+        }
+        String command = commands.get(key);
+        LOG.info("starting worker for " + key + ": " + command);
+        return new Worker(command);
+    }
+
+    private void giveBack(String key, Worker worker) {
+        if (worker.requests >= maxRequests) {
+            LOG.debug("recycling worker for " + key + " after " + worker.requests + " requests");
+            worker.destroy();
+            return;
+        }
+        synchronized (this) {
+            LinkedList<Worker> list = idle.get(key);
+            if (list == null) {
+                idle.put(key, list = new LinkedList<Worker>());
+            }
+            if (!closed && list.size() < poolSize) {
+                list.add(worker);
+                return;
+            }
+        }
+        worker.destroy();
+    }
+
+    private boolean isHealthy(Worker worker) {
+        if (!worker.isAlive()) {
+            return false;
+        }
+        if (System.currentTimeMillis() - worker.lastUsed < healthCheckInterval) {
+            return true;
+        }
+        try {
+            Response response = worker.request(PING, null);
+            while (response.skip(Long.MAX_VALUE) > 0) {
+            }
+            return response.getExitCode() == 0;
+        } catch (IOException ex) {
+            LOG.debug("worker did not answer ping", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Response of a worker to a request, reading the output of the command
+     * up to the exit line.
+     */
+    public class Response extends InputStream {
+
+        /**
+         * Longest exit line suffix recognized, marker and exit code.
+         */
+        private final byte[] held = new byte[MARKER_BYTES.length + 12];
+        private int heldCount = 0;
+
+        /**
+         * Output read from the worker, not yet returned to the caller.
+         */
+        private final byte[] pending = new byte[held.length + 1];
+        private int pendingPos = 0;
+        private int pendingCount = 0;
+
+        private final Worker worker;
+        private final String key;
+        private final ScheduledFuture<?> timeout;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile int exitCode = -1;
+        private volatile boolean complete = false;
+        private volatile boolean ended = false;
+
+        Response(Worker worker, String key, ScheduledFuture<?> timeout) {
+            this.worker = worker;
+            this.key = key;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return pending[pendingPos++] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = 0;
+            do {
+                int chunk = Math.min(len - n, pendingCount - pendingPos);
+                System.arraycopy(pending, pendingPos, b, off + n, chunk);
+                pendingPos += chunk;
+                n += chunk;
+                // do not block for more output once there is some
+            } while (n < len && (pendingPos < pendingCount || worker.stdout.available() > 0) && fill());
+            return n;
+        }
+
+        /**
+         * Reads from the worker until there is pending output or the
+         * response has ended.
+         *
+         * @return false if the response has ended
+         */
+        private boolean fill() throws IOException {
+            while (pendingPos == pendingCount) {
+                if (ended) {
+                    return false;
+                }
+                pendingPos = pendingCount = 0;
+                int b;
+                try {
+                    b = worker.stdout.read();
+                } catch (IOException ex) {
+                    end(false);
+                    throw ex;
+                }
+                if (b == -1) {
+                    end(false);
+                    throw new IOException("worker terminated without response");
+                }
+                accept((byte) b);
+            }
+            return true;
+        }
+
+        /**
+         * Passes a byte of the worker's output on, holding back a possible
+         * exit line suffix until the end of its line.
+         */
+        private void accept(byte b) {
+            if (heldCount == 0) {
+                if (b == MARKER_BYTES[0]) {
+                    held[heldCount++] = b;
+                } else {
+                    pending[pendingCount++] = b;
+                }
+                return;
+            }
+            if (b == '\n') {
+                int code = parseExitCode(held, heldCount);
+                if (code != Integer.MIN_VALUE) {
+                    exitCode = code;
+                    // health checks do not wear a worker out
+                    if (key != null) {
+                        worker.requests++;
+                    }
+                    worker.lastUsed = System.currentTimeMillis();
+                    end(true);
+                    return;
+                }
+                passHeld(heldCount);
+                pending[pendingCount++] = b;
+                return;
+            }
+            if (heldCount == held.length) {
+                passHeld(heldCount);
+                accept(b);
+                return;
+            }
+            held[heldCount++] = b;
+            // the marker may start again later in the held bytes
+            while (heldCount > 0 && !isExitLineStart(held, heldCount)) {
+                int next = 1;
+                while (next < heldCount && held[next] != MARKER_BYTES[0]) {
+                    next++;
+                }
+                passHeld(next);
+            }
+        }
+
+        /**
+         * Moves the first held bytes to the pending output.
+         */
+        private void passHeld(int n) {
+            System.arraycopy(held, 0, pending, pendingCount, n);
+            pendingCount += n;
+            System.arraycopy(held, n, held, 0, heldCount - n);
+            heldCount -= n;
+        }
+
+        private void end(boolean complete) {
+            // not synchronized on the response, a reader may block in read
+            synchronized (done) {
+                if (ended) {
+                    return;
+                }
+                ended = true;
+                this.complete = complete;
+            }
+            timeout.cancel(false);
+            if (!complete) {
+                worker.destroy();
+            } else if (key != null) {
+                giveBack(key, worker);
+            }
+            done.countDown();
+        }
+
+        /**
+         * Stops reading the response. A worker whose response has not been
+         * read to its end is in an unknown state and is stopped.
+         */
+        @Override
+        public void close() {
+            end(false);
+        }
+
+        /**
+         * Waits for the response to end.
+         *
+         * @return false if the response has not ended within the timeout
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return done.await(timeout, unit);
+        }
+
+        /**
+         * Whether the response has been read up to the exit line.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Gets the exit code of the command.
+         *
+         * @return the exit code, -1 if the exit line has not been read
+         */
+        public int getExitCode() {
+            return exitCode;
+        }
+    }
+
+    /**
+     * A running worker process.
+     */
+    private class Worker {
+        private final Process proc;
+        private final OutputStream stdin;
+        private final InputStream stdout;
+        private int requests = 0;
+        private long lastUsed = System.currentTimeMillis();
+
+        Worker(String command) throws IOException {
+            String[] cmd;
+            if (System.getProperty("os.name").startsWith("Windows")) {
+                cmd = new String[]{"cmd.exe", "/C", command};
+            } else {
+                cmd = new String[]{"sh", "-c", command};
+            }
+            // started in the working directory of the task, which outlives
+            // the directories of single requests
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+            pb.redirectErrorStream(true);
+            proc = pb.start();
+            stdin = proc.getOutputStream();
+            stdout = new BufferedInputStream(proc.getInputStream());
+        }
+
+        boolean isAlive() {
+            return proc.isAlive();
+        }
+
+        /**
+         * Sends a request line.
+         *
+         * @param key key the worker is given back under at the end of the
+         *  response, null for a health check
+         */
+        Response request(String line, String key) throws IOException {
+            ScheduledFuture<?> timeout = watchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    LOG.warn("Worker execution has reached timeout of "
+                            + executionTimeout + " seconds. The worker has been terminated!");
+                    proc.destroy();
+                }
+            }, executionTimeout, TimeUnit.SECONDS);
+            try {
+                stdin.write((line + "\n").getBytes());
+                stdin.flush();
+            } catch (IOException ex) {
+                timeout.cancel(false);
+                throw ex;
+            }
+            return new Response(this, key, timeout);
+        }
+
+        void destroy() {
+            try {
+                stdin.close();
+            } catch (IOException ex) {
+                LOG.debug("could not close worker stdin", ex);
+            }
+            proc.destroy();
+        }
+    }
+
+    private static final byte[] MARKER_BYTES = EXIT_MARKER.getBytes();
+
+    /**
+     * Whether bytes are the start of an exit line suffix: the marker, an
+     * optionally signed exit code and a carriage return.
+     */
+    private static boolean isExitLineStart(byte[] b, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i < MARKER_BYTES.length) {
+                if (b[i] != MARKER_BYTES[i]) {
+                    return false;
+                }
+            } else if (b[i] == '\r') {
+                if (i != count - 1) {
+                    return false;
+                }
+            } else if (!(b[i] >= '0' && b[i] <= '9' || b[i] == '-' && i == MARKER_BYTES.length)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses the exit code of a complete exit line suffix.
+     *
+     * @return the exit code, Integer.MIN_VALUE if the bytes are no exit
+     *  line suffix
+     */
+    private static int parseExitCode(byte[] b, int count) {
+        if (!isExitLineStart(b, count)) {
+            return Integer.MIN_VALUE;
+        }
+        if (count > 0 && b[count - 1] == '\r') {
+            count--;
+        }
+        try {
+            return Integer.parseInt(new String(b, MARKER_BYTES.length,
+                        Math.max(0, count - MARKER_BYTES.length)));
+        } catch (NumberFormatException ex) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+package eu.scape_project.pt.repo;
+
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Tool;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import eu.scape_project.pt.util.PropertyNames;
+
+/**
+ * Keeps unmarshalled toolspecs of an underlying repository in memory.
+ *
+ * Toolspecs are cached by their name together with the modification time
+ * of the toolspec file. The modification time is re-checked at most once
+ * per check interval, so repeated lookups within the interval do not touch
+ * the underlying repository at all. The number of cached toolspecs is bounded,
+ * the least recently used one is evicted first.
+ */
+public class CachingRepository implements Repository {
+
+    private static Log LOG = LogFactory.getLog(CachingRepository.class);
+
+    /**
+     * Default maximum number of cached toolspecs.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /**
+     * Default interval in milliseconds after which a cached toolspec
+     * is checked for modifications.
+     */
+    public static final long DEFAULT_CHECK_INTERVAL = 60 * 1000;
+
+    /**
+     * A cached toolspec together with the modification time it was read at.
+     */
+    private static class CachedTool {
+        private final Tool tool;
+        private final long modificationTime;
+        private long checked;
+
+        CachedTool(Tool tool, long modificationTime, long checked) {
+            this.tool = tool;
+            this.modificationTime = modificationTime;
+            this.checked = checked;
+        }
+    }
+
+    private final Repository repo;
+    private final long checkInterval;
+    private final Map<String, CachedTool> cache;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Constructs the cache with default settings.
+     *
+     * @param repo repository to read toolspecs from
+     */
+    public CachingRepository(Repository repo) {
+        this(repo, DEFAULT_MAX_ENTRIES, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Constructs the cache with settings taken from a Hadoop configuration.
+     *
+     * @param repo repository to read toolspecs from
+     * @param conf Hadoop configuration
+     */
+    public CachingRepository(Repository repo, Configuration conf) {
+        this(repo,
+            conf.getInt(PropertyNames.REPO_CACHE_SIZE, DEFAULT_MAX_ENTRIES),
+            conf.getLong(PropertyNames.REPO_CACHE_CHECK_INTERVAL, DEFAULT_CHECK_INTERVAL));
+    }
+
+    /**
+     * Constructs the cache.
+     *
+     * @param repo repository to read toolspecs from
+     * @param maxEntries maximum number of cached toolspecs
+     * @param checkInterval milliseconds after which a cached toolspec is checked
+     *  for modifications, 0 checks on every lookup
+     */
+    public CachingRepository(Repository repo, final int maxEntries, long checkInterval) {
+        if( maxEntries < 1 )
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        this.repo = repo;
+        this.checkInterval = checkInterval;
+        this.cache = new LinkedHashMap<String, CachedTool>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedTool> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Gets a toolspec from the cache or, if it is missing or has been modified,
+     * from the underlying repository.
+     *
+     * @param strTool name of the tool to get
+     */
+    @Override
+    public synchronized Tool getTool(String strTool) throws IOException {
+        long now = System.currentTimeMillis();
+        CachedTool cached = cache.get(strTool);
+        if( cached != null && now - cached.checked < checkInterval ) {
+            hits++;
+            return cached.tool;
+        }
+        long modificationTime = repo.getModificationTime(strTool);
+        if( cached != null ) {
+            if( modificationTime == cached.modificationTime ) {
+                cached.checked = now;
+                hits++;
+                return cached.tool;
+            }
+            LOG.debug("toolspec " + strTool + " has been modified");
+        }
+        misses++;
+        Tool tool = repo.getTool(strTool);
+        cache.put(strTool, new CachedTool(tool, modificationTime, now));
+        return tool;
+    }
+
+    @Override
+    public long getModificationTime(String strTool) throws IOException {
+        return repo.getModificationTime(strTool);
+    }
+
+    @Override
+    public String[] getToolList() {
+        return repo.getToolList();
+    }
+
+    /**
+     * Gets the number of lookups served from the cache.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups which had to read the toolspec from the
+     * underlying repository.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of currently cached toolspecs.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+}
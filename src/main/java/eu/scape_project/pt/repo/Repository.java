@@ -17,4 +17,11 @@ public interface Repository {
 
     Tool getTool(String tool) throws IOException;
 
+    /**
+     * Gets the modification time of a toolspec.
+     * @param tool name of the toolspec
+     * @return modification time in milliseconds since the epoch
+     */
+    long getModificationTime(String tool) throws IOException;
+
 }
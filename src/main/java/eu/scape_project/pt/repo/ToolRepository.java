@@ -51,9 +51,7 @@ public class ToolRepository implements Repository {
      */
     @Override
     public Tool getTool( String strTool ) throws IOException {
-        Path file = new Path( 
-                repo_dir.toString() + System.getProperty("file.separator") 
-                + getToolName( strTool ) );
+        Path file = getToolPath( strTool );
 
         FSDataInputStream fis = fs.open( file );
         try {
@@ -65,6 +63,16 @@ public class ToolRepository implements Repository {
         }
     }
 
+    /**
+     * Gets the modification time of a toolspec file.
+     *
+     * @param strTool name of the tool
+     */
+    @Override
+    public long getModificationTime( String strTool ) throws IOException {
+        return fs.getFileStatus( getToolPath( strTool ) ).getModificationTime();
+    }
+
     @Override
     public String[] getToolList() {
         FileStatus[] list = new FileStatus[0];
@@ -79,6 +87,15 @@ public class ToolRepository implements Repository {
         return strList;
     }
 
+    /**
+     * Gets the path of the toolspec file of given tool name.
+     */
+    private Path getToolPath( String strTool ) {
+        return new Path( 
+                repo_dir.toString() + System.getProperty("file.separator") 
+                + getToolName( strTool ) );
+    }
+
     /**
      * Gets the file name of given tool name.
      */
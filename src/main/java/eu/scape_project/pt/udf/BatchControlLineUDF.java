@@ -0,0 +1,235 @@
+package eu.scape_project.pt.udf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.Accumulator;
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultDataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.util.UDFContext;
+
+import eu.scape_project.pt.ToolWrapper;
+import eu.scape_project.pt.util.PropertyNames;
+
+/**
+ * Executes a bag of control lines concurrently, in batches, on a bounded
+ * pool of {@link ToolWrapper}s.
+ *
+ * The argument is a bag of (toolspecs_path, control_line) tuples, e.g. the
+ * bag of a GROUP. The result is a bag of (control_line, stdout) tuples in
+ * the order of the input. The number of concurrent control lines is set by
+ * {@link PropertyNames#UDF_POOL_SIZE} (default: number of processors), the
+ * number of lines submitted at once by {@link PropertyNames#UDF_BATCH_SIZE}.
+ * As an {@link Accumulator} large bags are processed in the chunks Pig hands
+ * over.
+ */
+public class BatchControlLineUDF extends EvalFunc<DataBag> implements Accumulator<DataBag> {
+
+	private static Log LOG = LogFactory.getLog(BatchControlLineUDF.class);
+
+	UDFContext context = UDFContext.getUDFContext();
+	TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	private ToolWrapperPool pool;
+	private ExecutorService executor;
+	private int batchSize;
+
+	/**
+	 * Input tuples submitted with the next batch.
+	 */
+	private final List<Tuple> batch = new ArrayList<Tuple>();
+
+	/**
+	 * Results of the bag being accumulated.
+	 */
+	private DataBag accumulated;
+
+	@Override
+	public DataBag exec(Tuple input) throws IOException {
+
+		if (input == null) {
+			return null;
+		}
+
+		if (input.size() != 1) {
+			throw new IllegalArgumentException(
+					"Tuple needs to contain exactly one argument (bag of (toolspecs_path, control_line))");
+		}
+
+		DataBag result = new DefaultDataBag();
+		try {
+			add((DataBag) input.get(0), result);
+			flush(result);
+		} finally {
+			batch.clear();
+		}
+		return result;
+	}
+
+	@Override
+	public void accumulate(Tuple b) throws IOException {
+		if (accumulated == null) {
+			accumulated = new DefaultDataBag();
+		}
+		add((DataBag) b.get(0), accumulated);
+	}
+
+	@Override
+	public DataBag getValue() {
+		if (accumulated == null) {
+			accumulated = new DefaultDataBag();
+		}
+		try {
+			flush(accumulated);
+		} catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		return accumulated;
+	}
+
+	@Override
+	public void cleanup() {
+		accumulated = null;
+		batch.clear();
+	}
+
+	private void add(DataBag lines, DataBag result) throws IOException {
+		if (lines == null) {
+			return;
+		}
+		for (Tuple line : lines) {
+			if (line.size() != 2) {
+				throw new IllegalArgumentException(
+						"Tuple needs to contain exactly two arguments (toolspecs_path, control_line)");
+			}
+			batch.add(line);
+			if (batch.size() >= getBatchSize()) {
+				flush(result);
+			}
+		}
+	}
+
+	/**
+	 * Executes the lines of the batch concurrently and adds their results
+	 * in input order.
+	 */
+	private void flush(DataBag result) throws IOException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		init();
+		List<Future<String>> futures = new ArrayList<Future<String>>(batch.size());
+		try {
+			for (Tuple line : batch) {
+				final String toolspecsPath = (String) line.get(0);
+				final String ctrlLine = (String) line.get(1);
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						LOG.debug("CtrlLine: " + ctrlLine);
+						ToolWrapper wrapper = pool.borrow(toolspecsPath);
+						try {
+							return wrapper.wrap(ctrlLine);
+						} finally {
+							pool.release(toolspecsPath, wrapper);
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				String stdOut = futures.get(i).get();
+				result.add(tupleFactory.newTuple(Arrays.<Object>asList(batch.get(i).get(1), stdOut)));
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalArgumentException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while executing control lines", e);
+		} finally {
+			for (Future<String> future : futures) {
+				future.cancel(false);
+			}
+			batch.clear();
+		}
+	}
+
+	private int getBatchSize() {
+		if (batchSize == 0) {
+			init();
+		}
+		return batchSize;
+	}
+
+	/**
+	 * Creates pool and threads on first use, when the job configuration is
+	 * available.
+	 */
+	private void init() {
+		if (executor != null) {
+			return;
+		}
+		Configuration conf = getConf();
+		int poolSize = Math.max(1, conf.getInt(PropertyNames.UDF_POOL_SIZE,
+				Runtime.getRuntime().availableProcessors()));
+		batchSize = Math.max(1, conf.getInt(PropertyNames.UDF_BATCH_SIZE, 4 * poolSize));
+		LOG.info("executing control lines on " + poolSize + " threads in batches of " + batchSize);
+
+		pool = createPool(conf, poolSize);
+		executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "controlline-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Gets the job configuration, a default one outside of a job.
+	 */
+	Configuration getConf() {
+		Configuration conf = context.getJobConf();
+		return conf == null ? new Configuration() : conf;
+	}
+
+	/**
+	 * Creates the pool the lines are executed on.
+	 */
+	ToolWrapperPool createPool(Configuration conf, int poolSize) {
+		return new ToolWrapperPool(conf, poolSize);
+	}
+
+	/**
+	 * Stops the threads and releases the wrappers when Pig is done with the
+	 * UDF instance.
+	 */
+	@Override
+	public void finish() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+	}
+}
@@ -2,6 +2,8 @@ package eu.scape_project.pt.udf;
 
 import java.io.IOException;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.pig.EvalFunc;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
@@ -13,12 +15,21 @@ import eu.scape_project.pt.util.PropertyNames;
 
 public class ControlLineUDF extends EvalFunc<Tuple> {
 
+	private static Log LOG = LogFactory.getLog(ControlLineUDF.class);
+
 	UDFContext context = UDFContext.getUDFContext();
 	TupleFactory tupleFactory = TupleFactory.getInstance();
-	
+
+	/**
+	 * Wrapper of the toolspec path of the previous tuple, kept for the
+	 * life of the UDF instance as its setup reads the repository.
+	 */
+	private ToolWrapper toolWrapper;
+	private String toolWrapperPath;
+
 	@Override
 	public Tuple exec(Tuple input) throws IOException {
-		
+
 		if (input == null) {
 			return null;
 		}
@@ -30,22 +41,62 @@ public class ControlLineUDF extends EvalFunc<Tuple> {
 
 		String toolspecsPath = (String) input.get(0);
 		String ctrlLine = (String) input.get(1);
-		
+
 		try {
-			
-			Configuration conf = context.getJobConf();
-			conf.set(PropertyNames.REPO_LOCATION, toolspecsPath);
-			
-			System.out.println("CtrlLine: "+ctrlLine);
-			System.out.println("toolspecsPath: "+toolspecsPath);
-            ToolWrapper toolWrapper = new ToolWrapper();
-            toolWrapper.setup(conf);
-			String stdOut = toolWrapper.wrap(ctrlLine);
-			//System.out.println("ToolWrapper.wrap returns: "+stdOut);
+			LOG.debug("CtrlLine: " + ctrlLine);
+			String stdOut = getToolWrapper(toolspecsPath).wrap(ctrlLine);
 			return tupleFactory.newTuple(stdOut);
-			
+
 		} catch (Exception e) {
 			throw new IllegalArgumentException(e);
 		}
-	}		
+	}
+
+	/**
+	 * Gets the wrapper for a toolspec path, replacing the current one if
+	 * it has been set up for another path.
+	 */
+	private ToolWrapper getToolWrapper(String toolspecsPath) throws IOException {
+		if (toolWrapper != null && toolspecsPath.equals(toolWrapperPath)) {
+			return toolWrapper;
+		}
+		closeToolWrapper();
+
+		LOG.info("toolspecsPath: " + toolspecsPath);
+		toolWrapper = newWrapper(toolspecsPath);
+		toolWrapperPath = toolspecsPath;
+		return toolWrapper;
+	}
+
+	/**
+	 * Sets up a new wrapper for a toolspec path.
+	 */
+	ToolWrapper newWrapper(String toolspecsPath) throws IOException {
+		Configuration conf = new Configuration(context.getJobConf());
+		conf.set(PropertyNames.REPO_LOCATION, toolspecsPath);
+		ToolWrapper wrapper = new ToolWrapper();
+		try {
+			wrapper.setup(conf);
+		} catch (IOException e) {
+			wrapper.close();
+			throw e;
+		}
+		return wrapper;
+	}
+
+	private void closeToolWrapper() {
+		if (toolWrapper != null) {
+			toolWrapper.close();
+			toolWrapper = null;
+			toolWrapperPath = null;
+		}
+	}
+
+	/**
+	 * Releases the wrapper when Pig is done with the UDF instance.
+	 */
+	@Override
+	public void finish() {
+		closeToolWrapper();
+	}
 }
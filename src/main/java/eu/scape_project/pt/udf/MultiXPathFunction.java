@@ -0,0 +1,97 @@
+package eu.scape_project.pt.udf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pig.EvalFunc;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultDataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * Selects nodes of an XML document by several XPath expressions, parsing
+ * the document only once.
+ * 
+ * The first argument holds the expressions, either as a tuple of strings,
+ * e.g. {@code TOTUPLE('/fits/filestatus/valid', '/fits/filestatus/well-formed')},
+ * or as a bag of single-field tuples. The second argument is the document
+ * like for {@link XPathFunction}. The result is a tuple with a bag per
+ * expression, each holding the values {@link XPathFunction} would return
+ * for it. The evaluation mode can be passed to the constructor like for
+ * {@link XPathFunction}.
+ */
+public class MultiXPathFunction extends EvalFunc<Tuple> {
+
+	TupleFactory tupleFactory = TupleFactory.getInstance();
+
+	private final XPathEvaluator evaluator;
+
+	public MultiXPathFunction() {
+		this(XPathEvaluator.Mode.AUTO.name());
+	}
+
+	/**
+	 * @param mode name of an {@link XPathEvaluator.Mode}, case-insensitive
+	 */
+	public MultiXPathFunction(String mode) {
+		evaluator = new XPathEvaluator(XPathEvaluator.Mode.valueOf(mode.toUpperCase()));
+	}
+
+	@Override
+	public Tuple exec(Tuple input) throws IOException {
+
+		if (input == null) {
+			return null;
+		}
+
+		if (input.size() != 2) {
+			throw new IllegalArgumentException(
+					"Tuple needs to contain only two arguments");
+		}
+
+		List<String> expressions = getExpressions(input.get(0));
+		Tuple xmlTuple = (Tuple) input.get(1);
+		String xml = (String) xmlTuple.get(0);
+
+		try {
+
+			Tuple result = tupleFactory.newTuple(expressions.size());
+			List<List<String>> values = evaluator.evaluate(expressions, xml);
+
+			for (int i = 0; i < values.size(); i++) {
+				DataBag dataBag = new DefaultDataBag();
+				for (String value : values.get(i)) {
+					dataBag.add(tupleFactory.newTuple(value));
+				}
+				result.set(i, dataBag);
+			}
+
+			return result;
+
+		} catch (Exception e) {
+			throw new IllegalArgumentException(e);
+		}
+
+	}
+
+	private static List<String> getExpressions(Object field) throws IOException {
+		List<String> expressions = new ArrayList<String>();
+		if (field instanceof DataBag) {
+			for (Tuple tuple : (DataBag) field) {
+				expressions.add((String) tuple.get(0));
+			}
+		} else if (field instanceof Tuple) {
+			Tuple tuple = (Tuple) field;
+			for (int i = 0; i < tuple.size(); i++) {
+				expressions.add((String) tuple.get(i));
+			}
+		} else {
+			throw new IllegalArgumentException(
+					"Expressions need to be a tuple or a bag of strings");
+		}
+		return expressions;
+	}
+
+}
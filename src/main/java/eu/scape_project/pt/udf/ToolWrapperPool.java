@@ -0,0 +1,150 @@
+package eu.scape_project.pt.udf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+
+import eu.scape_project.pt.ToolWrapper;
+import eu.scape_project.pt.util.PropertyNames;
+
+/**
+ * Pool of set up {@link ToolWrapper}s by toolspec path, for UDFs executing
+ * control lines on several threads. A borrowed wrapper is used by one thread
+ * only until it is released.
+ *
+ * At most a given number of wrappers is kept idle; when the pool is full,
+ * idle wrappers of other toolspec paths make room for a released one.
+ */
+class ToolWrapperPool {
+
+	private static Log LOG = LogFactory.getLog(ToolWrapperPool.class);
+
+	private final Configuration conf;
+	private final int size;
+
+	private final Map<String, LinkedList<ToolWrapper>> idle = new HashMap<String, LinkedList<ToolWrapper>>();
+	private int numIdle = 0;
+	private boolean closed = false;
+
+	/**
+	 * Constructs the pool.
+	 *
+	 * @param conf configuration the wrappers are set up with
+	 * @param size maximum number of idle wrappers
+	 */
+	ToolWrapperPool(Configuration conf, int size) {
+		this.conf = conf;
+		this.size = size;
+	}
+
+	/**
+	 * Gets an idle wrapper for a toolspec path or sets up a new one.
+	 */
+	ToolWrapper borrow(String toolspecsPath) throws IOException {
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("pool is closed");
+			}
+			LinkedList<ToolWrapper> wrappers = idle.get(toolspecsPath);
+			if (wrappers != null && !wrappers.isEmpty()) {
+				numIdle--;
+				return wrappers.removeFirst();
+			}
+		}
+
+		LOG.info("toolspecsPath: " + toolspecsPath);
+		return newWrapper(toolspecsPath);
+	}
+
+	/**
+	 * Sets up a new wrapper for a toolspec path.
+	 */
+	ToolWrapper newWrapper(String toolspecsPath) throws IOException {
+		Configuration wrapperConf = new Configuration(conf);
+		wrapperConf.set(PropertyNames.REPO_LOCATION, toolspecsPath);
+		// wrappers of the pool execute lines concurrently in the same directory otherwise
+		wrapperConf.setBoolean(PropertyNames.ISOLATED_WORKING_DIR, true);
+		ToolWrapper wrapper = new ToolWrapper();
+		try {
+			wrapper.setup(wrapperConf);
+		} catch (IOException e) {
+			wrapper.close();
+			throw e;
+		}
+		return wrapper;
+	}
+
+	/**
+	 * Returns a borrowed wrapper to the pool.
+	 */
+	void release(String toolspecsPath, ToolWrapper wrapper) {
+		ToolWrapper evicted = wrapper;
+		synchronized (this) {
+			if (!closed) {
+				evicted = numIdle < size ? null : evictOther(toolspecsPath);
+				if (numIdle < size) {
+					LinkedList<ToolWrapper> wrappers = idle.get(toolspecsPath);
+					if (wrappers == null) {
+						wrappers = new LinkedList<ToolWrapper>();
+						idle.put(toolspecsPath, wrappers);
+					}
+					wrappers.addFirst(wrapper);
+					numIdle++;
+				} else {
+					evicted = wrapper;
+				}
+			}
+		}
+		if (evicted != null) {
+			evicted.close();
+		}
+	}
+
+	/**
+	 * Removes an idle wrapper of another toolspec path.
+	 *
+	 * @return the removed wrapper or null if there is none
+	 */
+	private ToolWrapper evictOther(String toolspecsPath) {
+		for (Map.Entry<String, LinkedList<ToolWrapper>> entry : idle.entrySet()) {
+			if (!entry.getKey().equals(toolspecsPath) && !entry.getValue().isEmpty()) {
+				numIdle--;
+				return entry.getValue().removeLast();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the number of idle wrappers.
+	 */
+	synchronized int getNumIdle() {
+		return numIdle;
+	}
+
+	/**
+	 * Closes the idle wrappers, wrappers released later are closed
+	 * right away.
+	 */
+	void close() {
+		List<ToolWrapper> wrappers = new ArrayList<ToolWrapper>();
+		synchronized (this) {
+			closed = true;
+			for (LinkedList<ToolWrapper> list : idle.values()) {
+				wrappers.addAll(list);
+			}
+			idle.clear();
+			numIdle = 0;
+		}
+		for (ToolWrapper wrapper : wrappers) {
+			wrapper.close();
+		}
+	}
+}
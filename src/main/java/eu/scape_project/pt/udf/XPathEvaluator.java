@@ -0,0 +1,350 @@
+package eu.scape_project.pt.udf;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * Evaluates XPath expressions on XML documents for the XPath UDFs.
+ *
+ * The result of an expression is the value of the first child of each
+ * selected node, i.e. the leading text of an element or the value of an
+ * attribute, null for nodes without children.
+ *
+ * Document builders, XPath objects and compiled expressions are cached per
+ * thread, expressions in an LRU map keyed by the expression string. Simple
+ * absolute paths like {@code /fits/filestatus/valid} or
+ * {@code /fits/identification/identity/@format} can be evaluated on a StAX
+ * stream instead of a DOM, so that large documents are never held in
+ * memory. Their steps match elements without namespace prefix by local
+ * name, like the namespace-unaware DOM does. With a StAX parser that does
+ * not report CDATA sections, a section following text of a matched element
+ * is joined to that text.
+ */
+public class XPathEvaluator {
+
+    /**
+     * How expressions are evaluated.
+     */
+    public enum Mode {
+        /** simple paths on a StAX stream, other expressions on a DOM */
+        AUTO,
+        /** all expressions on a DOM */
+        DOM,
+        /** all expressions on a StAX stream, fails for other than simple paths */
+        STREAM
+    }
+
+    /**
+     * Maximum number of compiled expressions cached per thread.
+     */
+    static final int MAX_CACHED_EXPRESSIONS = 64;
+
+    private static final Pattern SIMPLE_PATH =
+        Pattern.compile("(/[A-Za-z_][\\w.\\-]*)+(/@[A-Za-z_][\\w.\\-]*)?");
+
+    private static final ThreadLocal<DocumentBuilder> builders = new ThreadLocal<DocumentBuilder>() {
+        @Override
+        protected DocumentBuilder initialValue() {
+            try {
+                return DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<XPath> xPaths = new ThreadLocal<XPath>() {
+        @Override
+        protected XPath initialValue() {
+            return XPathFactory.newInstance().newXPath();
+        }
+    };
+
+    private static final ThreadLocal<Map<String, XPathExpression>> expressions =
+        new ThreadLocal<Map<String, XPathExpression>>() {
+            @Override
+            protected Map<String, XPathExpression> initialValue() {
+                return new LinkedHashMap<String, XPathExpression>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, XPathExpression> eldest) {
+                        return size() > MAX_CACHED_EXPRESSIONS;
+                    }
+                };
+            }
+        };
+
+    /**
+     * The factory is thread-safe once configured.
+     */
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    static {
+        // the JDK's parser merges CDATA sections into text unless asked not to
+        String reportCdata = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+        if (inputFactory.isPropertySupported(reportCdata)) {
+            inputFactory.setProperty(reportCdata, Boolean.TRUE);
+        }
+    }
+
+    private final Mode mode;
+
+    public XPathEvaluator(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Evaluates an expression on a document.
+     *
+     * @param expression XPath expression selecting nodes
+     * @param xml the document
+     * @return values of the selected nodes in document order
+     */
+    public List<String> evaluate(String expression, String xml) throws Exception {
+        SimplePath path = mode == Mode.DOM ? null : SimplePath.parse(expression);
+        if (path != null) {
+            return path.evaluate(xml);
+        }
+        if (mode == Mode.STREAM) {
+            throw new IllegalArgumentException("not a simple path: " + expression);
+        }
+        return evaluate(compile(expression), parse(xml));
+    }
+
+    /**
+     * Evaluates several expressions on a document, parsing it only once:
+     * in a single pass over a stream if all are simple paths, else into a
+     * DOM.
+     *
+     * @param expressions XPath expressions selecting nodes
+     * @param xml the document
+     * @return values of the selected nodes per expression in document order
+     */
+    public List<List<String>> evaluate(List<String> expressions, String xml) throws Exception {
+        if (mode != Mode.DOM) {
+            SimplePath[] paths = new SimplePath[expressions.size()];
+            for (int i = 0; i < paths.length; i++) {
+                paths[i] = SimplePath.parse(expressions.get(i));
+                if (paths[i] == null) {
+                    if (mode == Mode.STREAM) {
+                        throw new IllegalArgumentException("not a simple path: " + expressions.get(i));
+                    }
+                    paths = null;
+                    break;
+                }
+            }
+            if (paths != null) {
+                return SimplePath.evaluate(paths, xml);
+            }
+        }
+        Document document = parse(xml);
+        List<List<String>> values = new ArrayList<List<String>>(expressions.size());
+        for (String expression : expressions) {
+            values.add(evaluate(compile(expression), document));
+        }
+        return values;
+    }
+
+    /**
+     * Parses a document with the builder of the current thread.
+     */
+    static Document parse(String xml) throws Exception {
+        DocumentBuilder builder = builders.get();
+        builder.reset();
+        return builder.parse(new InputSource(new StringReader(xml)));
+    }
+
+    /**
+     * Gets the compiled expression from the cache of the current thread,
+     * compiling it on first use.
+     */
+    static XPathExpression compile(String expression) throws XPathExpressionException {
+        Map<String, XPathExpression> cache = expressions.get();
+        XPathExpression compiled = cache.get(expression);
+        if (compiled == null) {
+            compiled = xPaths.get().compile(expression);
+            cache.put(expression, compiled);
+        }
+        return compiled;
+    }
+
+    static List<String> evaluate(XPathExpression expression, Document document)
+            throws XPathExpressionException {
+        NodeList nodeList = (NodeList) expression.evaluate(document, XPathConstants.NODESET);
+        List<String> values = new ArrayList<String>(nodeList.getLength());
+        for (int i = 0; i < nodeList.getLength(); i++) {
+            Node firstChild = nodeList.item(i).getFirstChild();
+            values.add(firstChild == null ? null : firstChild.getNodeValue());
+        }
+        return values;
+    }
+
+    /**
+     * An absolute path of element names, optionally ending with an
+     * attribute.
+     */
+    static class SimplePath {
+        private final String[] steps;
+        private final String attribute;
+
+        private SimplePath(String[] steps, String attribute) {
+            this.steps = steps;
+            this.attribute = attribute;
+        }
+
+        /**
+         * Parses an expression.
+         *
+         * @return the path or null if the expression is no simple path
+         */
+        static SimplePath parse(String expression) {
+            String expr = expression.trim();
+            if (!SIMPLE_PATH.matcher(expr).matches()) {
+                return null;
+            }
+            String attribute = null;
+            int at = expr.indexOf("/@");
+            if (at >= 0) {
+                attribute = expr.substring(at + 2);
+                expr = expr.substring(0, at);
+            }
+            return new SimplePath(expr.substring(1).split("/"), attribute);
+        }
+
+        List<String> evaluate(String xml) throws Exception {
+            return evaluate(new SimplePath[]{this}, xml).get(0);
+        }
+
+        /**
+         * Evaluates several paths in one pass over a document.
+         *
+         * @return values of the selected nodes per path in document order
+         */
+        static List<List<String>> evaluate(SimplePath[] paths, String xml) throws Exception {
+            List<List<String>> values = new ArrayList<List<String>>(paths.length);
+            for (int p = 0; p < paths.length; p++) {
+                values.add(new ArrayList<String>());
+            }
+            // depth of open elements and how many of them match the leading steps of each path
+            int depth = 0;
+            int[] matched = new int[paths.length];
+            // first child of a matched element per path while it is being read
+            StringBuilder[] text = new StringBuilder[paths.length];
+            int[] textEvent = new int[paths.length];
+            int capturing = 0;
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(new StringReader(xml));
+            try {
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    for (int p = 0; capturing > 0 && p < paths.length; p++) {
+                        if (text[p] == null) {
+                            continue;
+                        }
+                        if (isText(event) && (textEvent[p] < 0 || textEvent[p] == textType(event))) {
+                            textEvent[p] = textType(event);
+                            text[p].append(reader.getText());
+                            continue;
+                        }
+                        if (textEvent[p] < 0 && event == XMLStreamConstants.COMMENT) {
+                            values.get(p).add(reader.getText());
+                        } else if (textEvent[p] < 0 && event == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                            values.get(p).add(reader.getPIData());
+                        } else {
+                            values.get(p).add(textEvent[p] < 0 ? null : text[p].toString());
+                        }
+                        text[p] = null;
+                        capturing--;
+                    }
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        for (int p = 0; p < paths.length; p++) {
+                            SimplePath path = paths[p];
+                            if (matched[p] == depth && depth < path.steps.length
+                                    && matches(reader, path.steps[depth])) {
+                                matched[p]++;
+                            }
+                            if (matched[p] != depth + 1 || matched[p] != path.steps.length) {
+                                continue;
+                            }
+                            if (path.attribute == null) {
+                                text[p] = new StringBuilder();
+                                textEvent[p] = -1;
+                                capturing++;
+                            } else {
+                                int index = indexOfAttribute(reader, path.attribute);
+                                if (index >= 0) {
+                                    values.get(p).add(reader.getAttributeValue(index));
+                                }
+                            }
+                        }
+                        depth++;
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        for (int p = 0; p < paths.length; p++) {
+                            if (matched[p] == depth) {
+                                matched[p]--;
+                            }
+                        }
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return values;
+        }
+
+        private static boolean isText(int event) {
+            return event == XMLStreamConstants.CHARACTERS
+                || event == XMLStreamConstants.CDATA
+                || event == XMLStreamConstants.SPACE;
+        }
+
+        /**
+         * CDATA sections are nodes of their own in a DOM, other text
+         * events belong to the same text node.
+         */
+        private static int textType(int event) {
+            return event == XMLStreamConstants.CDATA ? event : XMLStreamConstants.CHARACTERS;
+        }
+
+        private static boolean matches(XMLStreamReader reader, String name) {
+            String prefix = reader.getPrefix();
+            return (prefix == null || prefix.length() == 0) && name.equals(reader.getLocalName());
+        }
+
+        /**
+         * Gets the index of an unprefixed attribute of the current element,
+         * -1 if it has none of that name.
+         */
+        private static int indexOfAttribute(XMLStreamReader reader, String name) {
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                if ((prefix == null || prefix.length() == 0)
+                        && name.equals(reader.getAttributeLocalName(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+}
@@ -1,24 +1,20 @@
 package eu.scape_project.pt.udf;
 
 import java.io.IOException;
-import java.io.StringReader;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.apache.pig.EvalFunc;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DefaultDataBag;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
 
 /**
+ * Selects nodes of an XML document by an XPath expression.
+ * 
+ * The evaluation mode can be passed to the constructor in a DEFINE, e.g.
+ * {@code DEFINE XPathService eu.scape_project.pt.udf.XPathFunction('dom');}
+ * see {@link XPathEvaluator.Mode}. By default simple absolute paths are
+ * evaluated on a stream.
  * 
  * @author Umar Maqsud
  * 
@@ -27,6 +23,19 @@ public class XPathFunction extends EvalFunc<DataBag> {
 
 	TupleFactory tupleFactory = TupleFactory.getInstance();
 
+	private final XPathEvaluator evaluator;
+
+	public XPathFunction() {
+		this(XPathEvaluator.Mode.AUTO.name());
+	}
+
+	/**
+	 * @param mode name of an {@link XPathEvaluator.Mode}, case-insensitive
+	 */
+	public XPathFunction(String mode) {
+		evaluator = new XPathEvaluator(XPathEvaluator.Mode.valueOf(mode.toUpperCase()));
+	}
+
 	@Override
 	public DataBag exec(Tuple input) throws IOException {
 
@@ -45,24 +54,10 @@ public class XPathFunction extends EvalFunc<DataBag> {
 		
 		try {
 
-			DocumentBuilderFactory factory = DocumentBuilderFactory
-					.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();
-			InputSource is = new InputSource(new StringReader(xml));
-
-			Document xmlDocument = builder.parse(is);
-
-			XPath xPath = XPathFactory.newInstance().newXPath();
-
-			NodeList nodeList = (NodeList) xPath.compile(expression).evaluate(
-					xmlDocument, XPathConstants.NODESET);
-
 			DataBag dataBag = new DefaultDataBag();
 
-			for (int i = 0; i < nodeList.getLength(); i++) {
-				Tuple tuple = tupleFactory.newTuple(nodeList.item(i)
-						.getFirstChild().getNodeValue());
-				dataBag.add(tuple);
+			for (String value : evaluator.evaluate(expression, xml)) {
+				dataBag.add(tupleFactory.newTuple(value));
 			}
 
 			return dataBag;
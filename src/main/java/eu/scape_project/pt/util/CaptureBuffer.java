@@ -0,0 +1,249 @@
+package eu.scape_project.pt.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Captures the standard output of a control line.
+ *
+ * Output is kept in memory up to a limit, beyond that all of it is spilled
+ * to a temporary file. The captured bytes are written into a {@link Text}
+ * as they are, without decoding them into a String first.
+ *
+ * A buffer is meant to be reused for the control lines of a wrapper: closing
+ * it only ends the capture, {@link #reset()} discards the captured output.
+ */
+public class CaptureBuffer extends OutputStream {
+
+    private static Log LOG = LogFactory.getLog(CaptureBuffer.class);
+
+    /**
+     * Default number of bytes kept in memory.
+     */
+    public static final int DEFAULT_MEMORY_LIMIT = 1024 * 1024;
+
+    private static final int INITIAL_SIZE = 8192;
+    private static final int SPILL_BUFFER_SIZE = 64 * 1024;
+
+    private final int memoryLimit;
+    private final File spillDir;
+
+    private byte[] buf;
+    private int count = 0;
+
+    /**
+     * Temporary file holding all output once the limit is exceeded.
+     */
+    private File spillFile;
+    private OutputStream spillOut;
+    private long spilled = 0;
+
+    private boolean closed = false;
+    private boolean released = false;
+
+    /**
+     * Constructs the buffer.
+     *
+     * @param memoryLimit number of bytes kept in memory
+     * @param spillDir directory of the temporary file, null for the default
+     *  temporary directory
+     */
+    public CaptureBuffer(int memoryLimit, File spillDir) {
+        this.memoryLimit = memoryLimit;
+        this.spillDir = spillDir;
+        this.buf = new byte[Math.max(0, Math.min(memoryLimit, INITIAL_SIZE))];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (spillFile == null && count < buf.length) {
+            ensureOpen();
+            buf[count++] = (byte) b;
+            return;
+        }
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (spillFile == null) {
+            if ((long) count + len <= memoryLimit) {
+                if (count + len > buf.length) {
+                    byte[] grown = new byte[(int) Math.min(memoryLimit,
+                            Math.max((long) buf.length << 1, count + len))];
+                    System.arraycopy(buf, 0, grown, 0, count);
+                    buf = grown;
+                }
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+                return;
+            }
+            spill();
+        }
+        spillOut.write(b, off, len);
+        spilled += len;
+    }
+
+    /**
+     * Moves the output captured so far to a temporary file.
+     */
+    private void spill() throws IOException {
+        spillFile = File.createTempFile("stdout", ".tmp", spillDir);
+        LOG.debug("spilling captured output to " + spillFile);
+        spillOut = new BufferedOutputStream(new FileOutputStream(spillFile), SPILL_BUFFER_SIZE);
+        spillOut.write(buf, 0, count);
+        spilled = count;
+        count = 0;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("capture is closed");
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (spillOut != null) {
+            spillOut.flush();
+        }
+    }
+
+    /**
+     * Ends the capture, the captured output stays available.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (spillOut != null) {
+            spillOut.close();
+            spillOut = null;
+        }
+    }
+
+    /**
+     * Gets the number of captured bytes.
+     */
+    public long size() {
+        return spillFile == null ? count : spilled;
+    }
+
+    /**
+     * Whether the output has been spilled to a temporary file.
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Replaces the content of a Text by the captured bytes.
+     */
+    public void writeTo(Text text) throws IOException {
+        if (spillFile == null) {
+            text.set(buf, 0, count);
+            return;
+        }
+        if (spilled > Integer.MAX_VALUE) {
+            throw new IOException("captured output of " + spilled + " bytes exceeds the size of a Text");
+        }
+        flush();
+        DataInputStream in = new DataInputStream(new FileInputStream(spillFile));
+        try {
+            text.readWithKnownLength(in, (int) spilled);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Replaces the content of a BytesWritable by the captured bytes.
+     */
+    public void writeTo(BytesWritable bytes) throws IOException {
+        if (spillFile == null) {
+            bytes.set(buf, 0, count);
+            return;
+        }
+        if (spilled > Integer.MAX_VALUE) {
+            throw new IOException("captured output of " + spilled + " bytes exceeds the size of a BytesWritable");
+        }
+        flush();
+        bytes.setSize((int) spilled);
+        DataInputStream in = new DataInputStream(new FileInputStream(spillFile));
+        try {
+            in.readFully(bytes.getBytes(), 0, (int) spilled);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes the captured bytes with the platform's default charset.
+     */
+    @Override
+    public String toString() {
+        if (spillFile == null) {
+            return new String(buf, 0, count);
+        }
+        Text text = new Text();
+        try {
+            writeTo(text);
+        } catch (IOException ex) {
+            throw new IllegalStateException("could not read captured output from " + spillFile, ex);
+        }
+        return new String(text.getBytes(), 0, text.getLength());
+    }
+
+    /**
+     * Discards the captured output and reopens the buffer for the next
+     * capture.
+     */
+    public void reset() {
+        if (released) {
+            throw new IllegalStateException("capture is released");
+        }
+        discard();
+        closed = false;
+    }
+
+    /**
+     * Discards the captured output and frees the memory of the buffer.
+     * Later writes fail.
+     */
+    public void release() {
+        discard();
+        closed = true;
+        released = true;
+        buf = new byte[0];
+    }
+
+    private void discard() {
+        count = 0;
+        spilled = 0;
+        if (spillOut != null) {
+            try {
+                spillOut.close();
+            } catch (IOException ex) {
+                LOG.debug("could not close " + spillFile, ex);
+            }
+            spillOut = null;
+        }
+        if (spillFile != null) {
+            if (!spillFile.delete()) {
+                LOG.warn("could not delete " + spillFile);
+            }
+            spillFile = null;
+        }
+    }
+
+}
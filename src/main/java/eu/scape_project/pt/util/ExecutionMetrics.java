@@ -0,0 +1,196 @@
+package eu.scape_project.pt.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Timings of the phases of executing control lines.
+ *
+ * The phases of the current line are accumulated in nanoseconds and, when
+ * the line ends, folded into latency histograms per key of the line, i.e.
+ * its tool/operation pipeline. Histograms have a bucket per power of two
+ * microseconds, so recording costs a few array operations.
+ *
+ * Instances are not thread-safe, each {@link eu.scape_project.pt.ToolWrapper}
+ * has its own.
+ */
+public class ExecutionMetrics {
+
+    /**
+     * Phases of the execution of a control line.
+     */
+    public enum Phase {
+        PARSE, REPO_LOOKUP, LOCALIZE, EXECUTE, DELOCALIZE, CAPTURE
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[] lineNanos = new long[PHASES.length];
+    private String lineKey;
+
+    private final Map<String, Histogram[]> histograms = new TreeMap<String, Histogram[]>();
+
+    /**
+     * Starts timing a new control line.
+     */
+    public void startLine() {
+        for (int p = 0; p < lineNanos.length; p++) {
+            lineNanos[p] = 0;
+        }
+        lineKey = null;
+    }
+
+    /**
+     * Sets the key the current line is recorded under.
+     */
+    public void setLineKey(String lineKey) {
+        this.lineKey = lineKey;
+    }
+
+    /**
+     * Gets the key of the current line, null if it is not known (yet).
+     */
+    public String getLineKey() {
+        return lineKey;
+    }
+
+    /**
+     * Adds the time elapsed since a start to a phase of the current line.
+     *
+     * @param phase the phase
+     * @param startNanos start as of {@link System#nanoTime()}
+     * @return the current time, to be used as start of the next phase
+     */
+    public long time(Phase phase, long startNanos) {
+        long now = System.nanoTime();
+        lineNanos[phase.ordinal()] += now - startNanos;
+        return now;
+    }
+
+    /**
+     * Gets the time spent in a phase of the current line in nanoseconds.
+     */
+    public long getLineNanos(Phase phase) {
+        return lineNanos[phase.ordinal()];
+    }
+
+    /**
+     * Records the phases of the current line in the histograms of its key.
+     * Lines without key are not recorded.
+     */
+    public void endLine() {
+        if (lineKey == null) {
+            return;
+        }
+        Histogram[] phases = histograms.get(lineKey);
+        if (phases == null) {
+            phases = new Histogram[PHASES.length];
+            for (int p = 0; p < phases.length; p++) {
+                phases[p] = new Histogram();
+            }
+            histograms.put(lineKey, phases);
+        }
+        for (int p = 0; p < phases.length; p++) {
+            phases[p].record(lineNanos[p] / 1000);
+        }
+    }
+
+    /**
+     * Gets the histogram of a phase of a key, null if no line of the key
+     * has been recorded.
+     */
+    public Histogram getHistogram(String key, Phase phase) {
+        Histogram[] phases = histograms.get(key);
+        return phases == null ? null : phases[phase.ordinal()];
+    }
+
+    /**
+     * Writes the histograms as tab separated lines of key, phase, count,
+     * sum, min, max, 50th, 90th and 99th percentile and the non-empty
+     * buckets as upper bound:count. All times are in microseconds.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        for (Entry<String, Histogram[]> entry : histograms.entrySet()) {
+            for (Phase phase : PHASES) {
+                Histogram h = entry.getValue()[phase.ordinal()];
+                writer.write(entry.getKey() + "\t" + phase + "\t" + h.getCount()
+                        + "\t" + h.getSum() + "\t" + h.getMin() + "\t" + h.getMax()
+                        + "\t" + h.getPercentile(50) + "\t" + h.getPercentile(90)
+                        + "\t" + h.getPercentile(99) + "\t" + h.getBuckets() + "\n");
+            }
+        }
+    }
+
+    /**
+     * Latency histogram with a bucket per power of two.
+     */
+    public static class Histogram {
+
+        /**
+         * counts[0] holds zeros, counts[b] values of [2^(b-1), 2^b).
+         */
+        private final long[] counts = new long[64];
+        private long count = 0;
+        private long sum = 0;
+        private long min = Long.MAX_VALUE;
+        private long max = 0;
+
+        public void record(long value) {
+            counts[64 - Long.numberOfLeadingZeros(Math.max(0, value))]++;
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets an upper bound of a percentile, exact up to the bucket
+         * width but never above the maximum.
+         */
+        public long getPercentile(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b++) {
+                seen += counts[b];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max, upperBound(b));
+                }
+            }
+            return max;
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : (1L << bucket) - 1;
+        }
+
+        String getBuckets() {
+            StringBuilder sb = new StringBuilder();
+            for (int b = 0; b < counts.length; b++) {
+                if (counts[b] == 0) continue;
+                if (sb.length() > 0) sb.append(',');
+                sb.append(upperBound(b)).append(':').append(counts[b]);
+            }
+            return sb.toString();
+        }
+    }
+
+}
@@ -15,6 +15,74 @@ public class PropertyNames {
     public static final String INFILE = "mapreduce.input.fileinputformat.inputdir";
     public static final String OUTDIR = "mapreduce.output.fileoutputformat.outputdir";
     public static final String REPO_LOCATION = "REPO_LOCATION";
+    public static final String REPO_CACHE_SIZE = "tomar.repo.cache.size";
+    public static final String REPO_CACHE_CHECK_INTERVAL = "tomar.repo.cache.checkinterval";
+
+    // number of control lines a mapper executes concurrently
+    public static final String MAPPER_THREADS = "tomar.mapper.threads";
+
+    // size in bytes of the buffers piping streams between processors
+    public static final String PIPE_BUFFER_SIZE = "tomar.pipe.buffersize";
+
+    // input parameters (tool/operation/input) streamed through named pipes instead of being copied
+    public static final String STREAMED_INPUTS = "tomar.localize.streamed";
+
+    // link replicas of single-block inputs stored on the local DataNode instead of copying them
+    public static final String LINK_LOCAL_BLOCKS = "tomar.localize.linklocalblocks";
+
+    // number of files of a control line localized or delocalized concurrently
+    public static final String TRANSFER_PARALLELISM = "tomar.transfer.parallelism";
+
+    // number of file status entries with block locations cached during split planning
+    public static final String LOCATION_CACHE_ENTRIES = "tomar.splits.locationcache.entries";
+
+    // number of threads resolving control lines during split planning
+    public static final String PLANNING_THREADS = "tomar.splits.planning.threads";
+    // number of control lines a planning thread resolves at once
+    public static final String PLANNING_CHUNK_SIZE = "tomar.splits.planning.chunksize";
+    // weight of control lines when cutting splits: lines, bytes or cost
+    public static final String SPLIT_WEIGHT = "tomar.splits.weight";
+    // prefix of per-operation cost factors, followed by {tool}.{operation}
+    public static final String SPLIT_COST_FACTOR_PREFIX = "tomar.splits.cost.";
+    // splits refer to line ranges of the control file instead of a rearranged copy
+    public static final String SPLIT_RANGES = "tomar.splits.ranges";
+    // directory on HDFS to keep split plans of control files for resubmission
+    public static final String PLAN_CACHE_DIR = "tomar.splits.plancache.dir";
+    // prefix of commands starting persistent workers, followed by {tool}.{operation}
+    public static final String WORKER_COMMAND_PREFIX = "tomar.worker.command.";
+    // maximum number of idle workers per operation
+    public static final String WORKER_POOL_SIZE = "tomar.worker.poolsize";
+    // number of requests after which a worker is recycled
+    public static final String WORKER_MAX_REQUESTS = "tomar.worker.maxrequests";
+    // idle time in milliseconds after which a worker is pinged before reuse
+    public static final String WORKER_HEALTH_CHECK_INTERVAL = "tomar.worker.healthcheck.interval";
+    // execute commands without shell syntax directly instead of through sh -c
+    public static final String DIRECT_EXEC = "tomar.exec.direct";
+    // bytes of standard output kept in memory before spilling to a temporary file
+    public static final String STDOUT_MEMORY_LIMIT = "tomar.stdout.memorylimit";
+    // directory of spilled standard output, defaults to java.io.tmpdir
+    public static final String STDOUT_SPILL_DIR = "tomar.stdout.spilldir";
+    // write ExecutionResult records to SequenceFiles instead of Text lines
+    public static final String RESULT_RECORDS = "tomar.output.records";
+    // write latency histograms of the execution phases as side files of the task output
+    public static final String METRICS_HISTOGRAMS = "tomar.metrics.histograms";
+    // node-local directory caching localized inputs across tasks, no cache if unset
+    public static final String LOCALIZATION_CACHE_DIR = "tomar.localize.cache.dir";
+    // maximum total size of the cached inputs in bytes
+    public static final String LOCALIZATION_CACHE_SIZE = "tomar.localize.cache.size";
+    // root of per-line scratch directories, e.g. on tmpfs; lines run in the task directory if unset
+    public static final String SCRATCH_DIR = "tomar.scratch.dir";
+    // maximum number of scratch directories waiting for deletion in the background
+    public static final String SCRATCH_MAX_PENDING_CLEANUPS = "tomar.scratch.cleanup.maxpending";
+    // execute lines in a directory per ToolWrapper, implied by tomar.mapper.threads > 1
+    public static final String ISOLATED_WORKING_DIR = "tomar.workingdir.isolated";
+    // number of control lines BatchControlLineUDF executes concurrently
+    public static final String UDF_POOL_SIZE = "tomar.udf.poolsize";
+    // number of control lines BatchControlLineUDF submits at once
+    public static final String UDF_BATCH_SIZE = "tomar.udf.batchsize";
+
+    // seconds a tool may execute before it is terminated and its control line fails
+    public static final String EXECUTION_TIMEOUT = "tomar.execution.timeout";
 
     // nInputFormat
     public static final String LINES_PER_MAP = "mapreduce.input.lineinputformat.linespermap";
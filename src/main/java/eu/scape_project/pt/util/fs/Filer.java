@@ -51,6 +51,20 @@ public abstract class Filer {
     public abstract void localize_(boolean copy) throws IOException;
     public abstract void localize() throws IOException;
 
+    /**
+     * Makes a remote file readable at its local file reference without 
+     * copying it to the local filesystem. The file's content is streamed
+     * into a named pipe while it is being read. Falls back to copying 
+     * if streaming is not possible.
+     */
+    public abstract void localizeStreamed() throws IOException;
+
+    /**
+     * Releases resources acquired by {@link #localizeStreamed()}. Fails if
+     * the file could not be read while streaming it.
+     */
+    public abstract void release() throws IOException;
+
     /**
      * Copies file or directory from local filesystem to remote one.
      */
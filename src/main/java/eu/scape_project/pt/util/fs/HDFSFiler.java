@@ -1,9 +1,11 @@
 package eu.scape_project.pt.util.fs;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URI;
 
 import org.apache.commons.logging.Log;
@@ -13,6 +15,9 @@ import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+
+import eu.scape_project.pt.proc.Processor;
 
 /**
  * Handles the transportation of files from the local filesystem to HDFS 
@@ -38,6 +43,42 @@ public class HDFSFiler extends Filer {
     
     private boolean copy;
 
+    /**
+     * Thread writing the file's content into a named pipe.
+     */
+    private Thread feeder;
+
+    /**
+     * Failure of the feeder other than the tool closing the pipe, null if
+     * there is none.
+     */
+    private volatile IOException feederFailure;
+
+    /**
+     * Maximum time in milliseconds to wait for the feeder on release.
+     */
+    private static final long FEEDER_TIMEOUT = 10 * 1000;
+
+    /**
+     * Time in milliseconds to wait for the feeder after unblocking it.
+     */
+    private static final long UNBLOCK_INTERVAL = 50;
+
+    /**
+     * Links replicas of data-local files, null if files are always copied.
+     */
+    private LocalBlockLinker blockLinker;
+
+    /**
+     * Node-local cache of localized files, null if files are always copied.
+     */
+    private LocalizationCache localizationCache;
+
+    /**
+     * Size in bytes of the buffer a streamed file is written with.
+     */
+    private int bufferSize = Processor.DEFAULT_PIPE_BUFFER_SIZE;
+
     HDFSFiler(URI uri) throws IOException {
         this.file = new Path(uri);
         hdfs = file.getFileSystem(new Configuration());
@@ -84,6 +125,33 @@ public class HDFSFiler extends Filer {
         hdfs.copyFromLocalFile(src, dest);
     }
     
+    /**
+     * Sets the linker used to localize files stored on the local DataNode
+     * without copying them.
+     *
+     * @param linker linker to use, null to always copy files
+     */
+    public void setBlockLinker(LocalBlockLinker linker) {
+        this.blockLinker = linker;
+    }
+
+    /**
+     * Sets the cache files are localized from if they cannot be linked.
+     *
+     * @param cache cache to use, null to always copy files
+     */
+    public void setLocalizationCache(LocalizationCache cache) {
+        this.localizationCache = cache;
+    }
+
+    /**
+     * Sets the size in bytes of the buffer a streamed file is written into
+     * its named pipe with.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
     public void localize_(boolean copy) throws IOException {
     	this.copy = copy;
     	localize();
@@ -93,8 +161,10 @@ public class HDFSFiler extends Filer {
     public void localize() throws IOException {
         File fileRef = new File(getAbsoluteFileRef());
         LOG.debug("localize " + fileRef);
-        if (!new File(fileRef.getParent()).mkdirs()) {
-            throw new IOException("Could not create local directory: " + fileRef.getParent() );
+        File parent = fileRef.getParentFile();
+        // the directory may exist already or be created concurrently
+        if (!parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create local directory: " + parent );
         }
         Path localfile = new Path( fileRef.toString() );
         if(hdfs.exists(file) && copy) {
@@ -114,10 +184,120 @@ public class HDFSFiler extends Filer {
                     LOG.debug("file is a directory");
                 }
             }
+            if( blockLinker != null && blockLinker.link(hdfs, file, fileRef) ) {
+                return;
+            }
+            if( localizationCache != null && localizationCache.fetch(hdfs, file, fileRef) ) {
+                return;
+            }
             hdfs.copyToLocalFile(file, localfile);
         }
     }
 
+    @Override
+    public void localizeStreamed() throws IOException {
+        if( System.getProperty("os.name").startsWith("Windows") 
+                || !hdfs.exists(file) || hdfs.getFileStatus(file).isDirectory() ) {
+            localize_(true);
+            return;
+        }
+        final File fifo = new File(getAbsoluteFileRef());
+        LOG.debug("localize streamed " + fifo);
+        File parent = fifo.getParentFile();
+        if( !parent.isDirectory() && !parent.mkdirs() ) {
+            throw new IOException("Could not create local directory: " + parent );
+        }
+        if( fifo.exists() && !fifo.delete() ) {
+            throw new IOException("Could not delete existing file: " + fifo );
+        }
+        Process mkfifo = new ProcessBuilder("mkfifo", fifo.getPath())
+            .redirectErrorStream(true).start();
+        try {
+            if( mkfifo.waitFor() != 0 ) {
+                throw new IOException("Could not create named pipe: " + fifo );
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        }
+
+        // fails the line right away if the file cannot be opened
+        final InputStream in = hdfs.open(file);
+        feederFailure = null;
+        feeder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                OutputStream out = null;
+                try {
+                    try {
+                        // blocks until the tool opens the pipe for reading
+                        out = new FileOutputStream(fifo);
+                    } catch (IOException ex) {
+                        feederFailure = ex;
+                        return;
+                    }
+                    byte[] buffer = new byte[bufferSize];
+                    while( true ) {
+                        int n;
+                        try {
+                            n = in.read(buffer);
+                        } catch (IOException ex) {
+                            // the tool would take the truncated input for the whole file
+                            feederFailure = ex;
+                            return;
+                        }
+                        if( n < 0 ) return;
+                        out.write(buffer, 0, n);
+                    }
+                } catch (IOException ex) {
+                    // tools may stop reading before the end of the file
+                    LOG.debug("streaming " + file + " stopped: " + ex.getMessage());
+                } finally {
+                    IOUtils.closeStream(in);
+                    IOUtils.closeStream(out);
+                }
+            }
+        }, "feeder-" + fifo.getName());
+        feeder.setDaemon(true);
+        feeder.start();
+    }
+
+    /**
+     * Waits for the feeder and deletes the named pipe.
+     *
+     * @throws IOException if the file could not be read while streaming it
+     */
+    @Override
+    public void release() throws IOException {
+        if( feeder == null ) return;
+        File fifo = new File(getAbsoluteFileRef());
+        long deadline = System.currentTimeMillis() + FEEDER_TIMEOUT;
+        try {
+            while( feeder.isAlive() && System.currentTimeMillis() < deadline ) {
+                // the tool did not open or did not drain the pipe, open and 
+                // close it so that the feeder stops; opening a pipe for reading
+                // and writing does not block. Repeated as the feeder may not
+                // have opened the pipe yet.
+                LOG.debug("unblocking feeder of " + fifo);
+                new RandomAccessFile(fifo, "rw").close();
+                feeder.join(UNBLOCK_INTERVAL);
+            }
+        } catch (InterruptedException ex) {
+            throw new IOException(ex);
+        }
+        if( feeder.isAlive() ) {
+            LOG.warn("feeder of " + fifo + " did not terminate");
+        }
+        feeder = null;
+        if( !fifo.delete() ) {
+            LOG.warn("Could not delete named pipe: " + fifo);
+        }
+        IOException failure = feederFailure;
+        feederFailure = null;
+        if( failure != null ) {
+            throw new IOException("Could not stream " + file + " into " + fifo, failure);
+        }
+    }
+
     @Override
     public void delocalize() throws IOException {
         this.depositDirectoryOrFile(getAbsoluteFileRef(), file.toString());
@@ -0,0 +1,255 @@
+package eu.scape_project.pt.util.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.HdfsBlockLocation;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+
+/**
+ * Localizes HDFS files whose data is stored on the local DataNode by
+ * linking the replica file of the DataNode instead of copying the data.
+ *
+ * Only files consisting of exactly one block can be linked, as the replica
+ * file of a block is then identical to the file's content. The DataNode's
+ * data directories need to be readable by the user running the tasks, and
+ * replicas the user could write to are not linked, as a tool modifying its
+ * input would corrupt the block.
+ *
+ * Replicas are found in the block ID based directory layout of the
+ * DataNode, 256x256 subdirectories up to layout version -56 and 32x32 since
+ * -57 (HDFS-8791). The layout version is read from the storage's VERSION
+ * file; if that cannot be read, both layouts are tried.
+ */
+public class LocalBlockLinker {
+
+    private static Log LOG = LogFactory.getLog(LocalBlockLinker.class);
+
+    /**
+     * Property of the DataNode's data directories.
+     */
+    public static final String DATA_DIRS = "dfs.datanode.data.dir";
+
+    /**
+     * Layout version introducing block ID based directories of 256x256
+     * subdirectories.
+     */
+    public static final int BLOCKID_BASED_LAYOUT = -56;
+
+    /**
+     * Layout version introducing block ID based directories of 32x32
+     * subdirectories.
+     */
+    public static final int BLOCKID_BASED_LAYOUT_32_BY_32 = -57;
+
+    private static final int[] SUBDIR_MASKS = { 0x1F, 0xFF };
+
+    private static final String SEP = File.separator;
+
+    private final File[] dataDirs;
+    private final Set<String> localHosts;
+
+    /**
+     * Subdirectory masks by block pool directory, empty if the layout is
+     * not block ID based.
+     */
+    private final ConcurrentMap<File, int[]> subdirMasks = new ConcurrentHashMap<File, int[]>();
+
+    /**
+     * Constructs the linker for the data directories configured for the
+     * DataNode on this host.
+     */
+    public LocalBlockLinker(Configuration conf) throws IOException {
+        this(toLocalDirs(conf.getTrimmedStrings(DATA_DIRS)), getLocalHostNames());
+    }
+
+    /**
+     * Constructs the linker.
+     *
+     * @param dataDirs local data directories of the DataNode
+     * @param localHosts names and addresses the local host is known by
+     */
+    public LocalBlockLinker(String[] dataDirs, Collection<String> localHosts) {
+        this.dataDirs = new File[dataDirs.length];
+        for( int i = 0; i < dataDirs.length; i++ ) {
+            this.dataDirs[i] = new File(dataDirs[i]);
+        }
+        this.localHosts = new HashSet<String>(localHosts);
+    }
+
+    /**
+     * Links the replica of a single-block file to a local file.
+     *
+     * @param fs filesystem of the file
+     * @param file file to localize
+     * @param localFile local file to create
+     * @return true if the file has been linked, false if it needs to be copied
+     */
+    public boolean link(FileSystem fs, Path file, File localFile) throws IOException {
+        if( dataDirs.length == 0 ) return false;
+        FileStatus status = fs.getFileStatus(file);
+        if( status.isDirectory() ) return false;
+        BlockLocation[] locations = fs.getFileBlockLocations(status, 0, status.getLen());
+        if( locations == null || locations.length != 1 ) return false;
+        if( !isLocal(locations[0]) ) return false;
+
+        ExtendedBlock block = getBlock(locations[0]);
+        if( block == null ) return false;
+        File replica = findReplica(block, status.getLen());
+        if( replica == null ) return false;
+        if( Files.isWritable(replica.toPath()) ) {
+            LOG.debug("not linking writable replica " + replica);
+            return false;
+        }
+        LOG.debug("linking " + replica + " to " + localFile);
+        try {
+            Files.createSymbolicLink(localFile.toPath(), replica.toPath());
+            return true;
+        } catch (IOException ex) {
+            LOG.debug("could not link " + replica, ex);
+        } catch (UnsupportedOperationException ex) {
+            LOG.debug("could not link " + replica, ex);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the block of a location or null if the block cannot be
+     * identified.
+     */
+    protected ExtendedBlock getBlock(BlockLocation location) {
+        if( !(location instanceof HdfsBlockLocation) ) return null;
+        return ((HdfsBlockLocation)location).getLocatedBlock().getBlock();
+    }
+
+    /**
+     * Finds the readable finalized replica of a block in the data
+     * directories.
+     *
+     * @param length length of the block
+     * @return the replica file, null if there is none
+     */
+    private File findReplica(ExtendedBlock block, long length) {
+        for( File dataDir : dataDirs ) {
+            File poolDir = new File(dataDir, "current" + SEP + block.getBlockPoolId());
+            for( int mask : getSubdirMasks(dataDir, poolDir) ) {
+                File replica = new File(poolDir,
+                        getReplicaPath(block.getBlockId(), mask));
+                if( replica.isFile() && replica.canRead() && replica.length() == length )
+                    return replica;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the subdirectory masks to look for replicas of a block pool
+     * with, by the layout version of its storage.
+     */
+    private int[] getSubdirMasks(File dataDir, File poolDir) {
+        int[] masks = subdirMasks.get(poolDir);
+        if( masks != null ) return masks;
+        Integer layoutVersion = readLayoutVersion(new File(poolDir, "current" + SEP + "VERSION"));
+        if( layoutVersion == null )
+            layoutVersion = readLayoutVersion(new File(dataDir, "current" + SEP + "VERSION"));
+        if( layoutVersion == null ) {
+            masks = SUBDIR_MASKS;
+        } else if( layoutVersion <= BLOCKID_BASED_LAYOUT_32_BY_32 ) {
+            masks = new int[]{ 0x1F };
+        } else if( layoutVersion <= BLOCKID_BASED_LAYOUT ) {
+            masks = new int[]{ 0xFF };
+        } else {
+            LOG.info("layout version " + layoutVersion + " of " + poolDir
+                    + " is not block ID based, replicas are not linked");
+            masks = new int[0];
+        }
+        subdirMasks.putIfAbsent(poolDir, masks);
+        return masks;
+    }
+
+    /**
+     * Reads the layout version of a storage VERSION file, null if it
+     * cannot be read.
+     */
+    private static Integer readLayoutVersion(File versionFile) {
+        if( !versionFile.isFile() ) return null;
+        Properties props = new Properties();
+        try {
+            InputStream in = new FileInputStream(versionFile);
+            try {
+                props.load(in);
+            } finally {
+                in.close();
+            }
+            String version = props.getProperty("layoutVersion");
+            return version == null ? null : Integer.valueOf(version.trim());
+        } catch (IOException ex) {
+            LOG.debug("could not read " + versionFile, ex);
+        } catch (NumberFormatException ex) {
+            LOG.debug("invalid layout version in " + versionFile, ex);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the path of a finalized replica relative to its block pool
+     * directory in a block ID based directory layout.
+     *
+     * @param subdirMask mask of the block ID bits naming a subdirectory,
+     *  0xFF for 256x256 and 0x1F for 32x32 subdirectories
+     */
+    static String getReplicaPath(long blockId, int subdirMask) {
+        return "current" + SEP + "finalized"
+            + SEP + "subdir" + ((blockId >> 16) & subdirMask)
+            + SEP + "subdir" + ((blockId >> 8) & subdirMask)
+            + SEP + "blk_" + blockId;
+    }
+
+    private boolean isLocal(BlockLocation location) throws IOException {
+        for( String host : location.getHosts() ) {
+            if( localHosts.contains(host) ) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Strips storage type prefixes and URI schemes from data directories.
+     */
+    private static String[] toLocalDirs(String[] dirs) {
+        List<String> localDirs = new ArrayList<String>();
+        for( String dir : dirs ) {
+            if( dir.startsWith("[") ) {
+                dir = dir.substring(dir.indexOf(']') + 1);
+            }
+            localDirs.add(new Path(dir).toUri().getPath());
+        }
+        return localDirs.toArray(new String[0]);
+    }
+
+    private static Collection<String> getLocalHostNames() throws IOException {
+        InetAddress local = InetAddress.getLocalHost();
+        return Arrays.asList(local.getHostName(), local.getCanonicalHostName(),
+                local.getHostAddress());
+    }
+
+}
@@ -0,0 +1,300 @@
+package eu.scape_project.pt.util.fs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+
+import eu.scape_project.pt.proc.Processor;
+
+/**
+ * Node-local cache of localized files, shared by the task JVMs of a node.
+ *
+ * Entries are keyed by path, length and modification time of the remote
+ * file, so a changed file is fetched again. They are handed out as hard
+ * links into the working directory of a control line, or copied if the
+ * working directory is on another device. Entries are read-only, tools
+ * must not modify their inputs in place.
+ *
+ * An entry is downloaded to a temporary file and renamed when complete.
+ * Downloads of the same entry are serialized by locks on striped lock
+ * files, held by one thread of a JVM at a time. Each use of an entry sets
+ * its modification time, entries are evicted in least recently used order
+ * when the total size exceeds the bound.
+ */
+public class LocalizationCache {
+
+    private static Log LOG = LogFactory.getLog(LocalizationCache.class);
+
+    /**
+     * Default maximum total size of the entries in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 10L * 1024 * 1024 * 1024;
+
+    private static final int LOCK_STRIPES = 16;
+    private static final String LOCK_PREFIX = ".lock-";
+    private static final String EVICT_LOCK = ".lock-evict";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Age in milliseconds after which temporary files are considered left
+     * over by a failed task.
+     */
+    private static final long STALE_TMP_AGE = 60 * 60 * 1000;
+
+    private final File dir;
+    private final long maxSize;
+
+    /**
+     * File locks are held per JVM, threads of a JVM are serialized on
+     * these first, whichever instance they use.
+     */
+    private static final Object[] stripes = new Object[LOCK_STRIPES];
+    private static final Object evictLock = new Object();
+
+    static {
+        for( int i = 0; i < stripes.length; i++ ) {
+            stripes[i] = new Object();
+        }
+    }
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs the cache.
+     *
+     * @param dir local directory of the entries, created if missing
+     * @param maxSize maximum total size of the entries in bytes
+     */
+    public LocalizationCache(File dir, long maxSize) throws IOException {
+        if( !dir.mkdirs() && !dir.isDirectory() ) {
+            throw new IOException("Could not create cache directory: " + dir );
+        }
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Localizes a file from the cache, fetching it on a miss.
+     *
+     * @param fs filesystem of the file
+     * @param file file to localize
+     * @param localFile local file to create
+     * @return true if the file has been localized, false if it cannot be
+     *  cached and needs to be copied
+     */
+    public boolean fetch(FileSystem fs, Path file, File localFile) throws IOException {
+        FileStatus status = fs.getFileStatus(file);
+        if( status.isDirectory() || status.getLen() > maxSize ) return false;
+
+        String key = getKey(status);
+        File entry = new File(dir, key);
+        if( entry.isFile() ) {
+            hits.incrementAndGet();
+            LOG.debug("cache hit for " + file);
+        } else if( !download(fs, status, entry) ) {
+            hits.incrementAndGet();
+            LOG.debug("cache hit for " + file + " after waiting for its download");
+        } else {
+            misses.incrementAndGet();
+            evict();
+        }
+        // the entry is used now
+        entry.setLastModified(System.currentTimeMillis());
+        return handOut(entry, localFile);
+    }
+
+    /**
+     * Downloads a file into an entry unless another thread or process has
+     * done so in the meantime.
+     *
+     * @return true if the file has been downloaded
+     */
+    private boolean download(FileSystem fs, FileStatus status, File entry) throws IOException {
+        int stripe = (entry.getName().hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES;
+        synchronized( stripes[stripe] ) {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(dir, LOCK_PREFIX + stripe), "rw");
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    if( entry.isFile() ) return false;
+                    LOG.debug("caching " + status.getPath() + " as " + entry);
+                    File tmp = new File(dir, entry.getName() + TMP_SUFFIX);
+                    // left over by a failed task
+                    tmp.delete();
+                    InputStream in = fs.open(status.getPath());
+                    OutputStream out = null;
+                    try {
+                        out = new FileOutputStream(tmp);
+                        IOUtils.copyBytes(in, out, Processor.DEFAULT_PIPE_BUFFER_SIZE, false);
+                    } finally {
+                        IOUtils.closeStream(in);
+                        IOUtils.closeStream(out);
+                    }
+                    if( tmp.length() != status.getLen() ) {
+                        tmp.delete();
+                        throw new IOException("Fetched " + tmp.length() + " of "
+                                + status.getLen() + " bytes of " + status.getPath());
+                    }
+                    tmp.setReadOnly();
+                    if( !tmp.renameTo(entry) ) {
+                        tmp.delete();
+                        throw new IOException("Could not rename " + tmp + " to " + entry);
+                    }
+                    return true;
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    /**
+     * Links an entry to a local file, copies it if it cannot be linked.
+     *
+     * @return false if the entry has been evicted in the meantime
+     */
+    private boolean handOut(File entry, File localFile) throws IOException {
+        if( localFile.exists() && !localFile.delete() ) {
+            throw new IOException("Could not delete existing file: " + localFile );
+        }
+        try {
+            Files.createLink(localFile.toPath(), entry.toPath());
+            return true;
+        } catch (IOException ex) {
+            LOG.debug("could not link " + entry + ", copying it", ex);
+        } catch (UnsupportedOperationException ex) {
+            LOG.debug("could not link " + entry + ", copying it", ex);
+        }
+        try {
+            Files.copy(entry.toPath(), localFile.toPath());
+            return true;
+        } catch (NoSuchFileException ex) {
+            LOG.debug(entry + " has been evicted");
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries while the total size exceeds
+     * the bound. Skipped if another process is evicting.
+     */
+    void evict() throws IOException {
+        synchronized( evictLock ) {
+            RandomAccessFile lockFile = new RandomAccessFile(new File(dir, EVICT_LOCK), "rw");
+            try {
+                FileLock lock = lockFile.getChannel().tryLock();
+                if( lock == null ) return;
+                try {
+                    evictEntries();
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+    private void evictEntries() {
+        File[] files = dir.listFiles();
+        if( files == null ) return;
+        long now = System.currentTimeMillis();
+        long size = 0;
+        int numEntries = 0;
+        for( File f : files ) {
+            String name = f.getName();
+            if( name.startsWith(LOCK_PREFIX) ) continue;
+            if( name.endsWith(TMP_SUFFIX) ) {
+                if( now - f.lastModified() > STALE_TMP_AGE && f.delete() ) {
+                    LOG.debug("deleted stale " + f);
+                }
+                continue;
+            }
+            files[numEntries++] = f;
+            size += f.length();
+        }
+        if( size <= maxSize ) return;
+
+        File[] entries = Arrays.copyOf(files, numEntries);
+        // entries may be used while sorting, compare a snapshot of their times
+        final Map<File, Long> lastUsed = new HashMap<File, Long>();
+        for( File entry : entries ) {
+            lastUsed.put(entry, entry.lastModified());
+        }
+        Arrays.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return lastUsed.get(a).compareTo(lastUsed.get(b));
+            }
+        });
+        for( File entry : entries ) {
+            if( size <= maxSize ) break;
+            long length = entry.length();
+            // files linked into working directories keep their data
+            if( entry.delete() ) {
+                LOG.debug("evicted " + entry);
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the entry of a file version.
+     */
+    static String getKey(FileStatus status) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update((status.getPath().toUri().toString() + "\n" + status.getLen()
+                        + "\n" + status.getModificationTime()).getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for( byte b : md5.digest() ) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+                  .append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Gets the number of files localized from an existing entry.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of files fetched into the cache.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+}
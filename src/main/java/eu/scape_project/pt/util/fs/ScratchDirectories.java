@@ -0,0 +1,156 @@
+package eu.scape_project.pt.util.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Scratch directories of control lines, each line is executed in a
+ * directory of its own below a directory of the task.
+ *
+ * Released directories are deleted by a background thread. At most a given
+ * number of deletions is pending, directories released beyond that are left
+ * to {@link #close()}, which deletes the directory of the task, so that
+ * releasing never blocks the next control line.
+ */
+public class ScratchDirectories {
+
+    private static Log LOG = LogFactory.getLog(ScratchDirectories.class);
+
+    /**
+     * Default maximum number of pending deletions.
+     */
+    public static final int DEFAULT_MAX_PENDING = 64;
+
+    /**
+     * Maximum time in milliseconds to wait for pending deletions on close.
+     */
+    private static final long CLOSE_TIMEOUT = 30 * 1000;
+
+    private final File taskDir;
+    private final ThreadPoolExecutor cleaner;
+
+    /**
+     * Constructs the scratch directories.
+     *
+     * @param root local directory to create the directory of the task in,
+     *  created if missing
+     * @param maxPending maximum number of pending deletions
+     */
+    public ScratchDirectories(File root, int maxPending) throws IOException {
+        if( !root.mkdirs() && !root.isDirectory() ) {
+            throw new IOException("Could not create scratch directory: " + root );
+        }
+        this.taskDir = Files.createTempDirectory(root.toPath(), "task-").toFile();
+        this.cleaner = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, maxPending)), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "scratch-cleaner");
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Gets the directory of the task.
+     */
+    public File getTaskDir() {
+        return taskDir;
+    }
+
+    /**
+     * Creates the scratch directory of a control line.
+     */
+    public File create() throws IOException {
+        return Files.createTempDirectory(taskDir.toPath(), "line-").toFile();
+    }
+
+    /**
+     * Deletes the scratch directory of a control line in the background.
+     */
+    public void release(final File dir) {
+        try {
+            cleaner.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        delete(dir);
+                    } catch (IOException ex) {
+                        LOG.warn("could not delete scratch directory " + dir, ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("deletion of " + dir + " deferred to close");
+        }
+    }
+
+    /**
+     * Waits a bounded time for pending deletions and deletes the directory
+     * of the task with whatever is left in it.
+     */
+    public void close() {
+        cleaner.shutdown();
+        try {
+            if( !cleaner.awaitTermination(CLOSE_TIMEOUT, TimeUnit.MILLISECONDS) ) {
+                LOG.warn("pending deletions of scratch directories did not finish");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            delete(taskDir);
+        } catch (IOException ex) {
+            LOG.warn("could not delete scratch directory " + taskDir, ex);
+        }
+    }
+
+    /**
+     * Deletes a directory recursively. Symbolic links are deleted, not
+     * followed.
+     */
+    public static void delete(File dir) throws IOException {
+        if( !dir.exists() ) return;
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+                    throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException ex)
+                    throws IOException {
+                // deleted concurrently
+                if( ex instanceof NoSuchFileException ) return FileVisitResult.CONTINUE;
+                throw ex;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException ex)
+                    throws IOException {
+                if( ex != null && !(ex instanceof NoSuchFileException) ) throw ex;
+                Files.deleteIfExists(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,159 @@
+package eu.scape_project.pt.util.fs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Localizes and delocalizes the files of several filers concurrently
+ * using a bounded number of threads.
+ *
+ * All transfers of a call are run to completion, failures are reported
+ * together in one IOException afterwards.
+ */
+public class TransferExecutor {
+
+    private static Log LOG = LogFactory.getLog(TransferExecutor.class);
+
+    /**
+     * Default number of concurrent transfers.
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Executor running the transfers, null if transfers run in the calling thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Constructs the executor.
+     *
+     * @param parallelism maximum number of concurrent transfers
+     */
+    public TransferExecutor(int parallelism) {
+        if( parallelism > 1 ) {
+            this.executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "transfer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Localizes the files of given filers.
+     *
+     * @param filers filers to localize
+     * @param copy whether to copy the files' contents or just prepare their
+     *  local directories
+     */
+    public void localize(Collection<Filer> filers, final boolean copy) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for( final Filer filer : filers ) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    filer.localize_(copy);
+                    return null;
+                }
+            });
+        }
+        runAll("localize", tasks);
+    }
+
+    /**
+     * Delocalizes the files of given filers.
+     *
+     * @param filers filers to delocalize
+     */
+    public void delocalize(Collection<Filer> filers) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for( final Filer filer : filers ) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    filer.delocalize();
+                    return null;
+                }
+            });
+        }
+        runAll("delocalize", tasks);
+    }
+
+    /**
+     * Stops the transfer threads.
+     */
+    public void shutdown() {
+        if( executor != null ) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs all tasks and waits for them to finish.
+     */
+    private void runAll(String action, List<Callable<Void>> tasks) throws IOException {
+        List<Exception> failures = new ArrayList<Exception>();
+        if( executor == null || tasks.size() < 2 ) {
+            for( Callable<Void> task : tasks ) {
+                try {
+                    task.call();
+                } catch (Exception ex) {
+                    failures.add(ex);
+                }
+            }
+        } else {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( Callable<Void> task : tasks ) {
+                futures.add(executor.submit(task));
+            }
+            for( Future<Void> future : futures ) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    failures.add(ex.getCause() instanceof Exception
+                            ? (Exception)ex.getCause() : ex);
+                } catch (InterruptedException ex) {
+                    for( Future<Void> f : futures ) {
+                        f.cancel(true);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                }
+            }
+        }
+        if( failures.isEmpty() ) return;
+
+        StringBuilder message = new StringBuilder();
+        message.append("failed to ").append(action).append(" ")
+            .append(failures.size()).append(" of ").append(tasks.size()).append(" files:");
+        for( Exception failure : failures ) {
+            LOG.error("failed to " + action, failure);
+            message.append("\n  ").append(failure.toString());
+        }
+        IOException ex = new IOException(message.toString(), failures.get(0));
+        for( int i = 1; i < failures.size(); i++ ) {
+            ex.addSuppressed(failures.get(i));
+        }
+        throw ex;
+    }
+
+}
@@ -0,0 +1,174 @@
+package eu.scape_project.pt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.scape_project.pt.mapred.output.ExecutionResult;
+import eu.scape_project.pt.util.PropertyNames;
+import eu.scape_project.pt.util.fs.LocalHdfs;
+import eu.scape_project.pt.util.fs.ScratchDirectories;
+
+public class ToolWrapperTest {
+
+    private static final int INPUT_SIZE = 1024 * 1024;
+
+    private File remoteDir;
+    private File input;
+    private Configuration conf;
+
+    @Before
+    public void setUp() throws IOException {
+        LocalHdfs.register();
+        remoteDir = Files.createTempDirectory("remote").toFile();
+        input = new File(remoteDir, "input.bin");
+        byte[] data = new byte[INPUT_SIZE];
+        new Random(42).nextBytes(data);
+        OutputStream out = new FileOutputStream(input);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        URL res = this.getClass().getClassLoader().getResource("toolspecs");
+        conf = new Configuration();
+        conf.set(PropertyNames.REPO_LOCATION, res.getFile());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ScratchDirectories.delete(remoteDir);
+    }
+
+    @Test
+    public void testConcurrentWrappersOnSameInput() throws Exception {
+        conf.setInt(PropertyNames.MAPPER_THREADS, 2);
+        final String controlLine = "wc bytes --input=\"" + LocalHdfs.toRef(input) + "\"";
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for( int i = 0; i < 2; i++ ) {
+            final ToolWrapper wrapper = new ToolWrapper();
+            wrapper.setup(conf);
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for( int l = 0; l < 10; l++ ) {
+                            results.add(wrapper.wrap(controlLine).trim());
+                        }
+                    } catch (Throwable ex) {
+                        errors.add(ex);
+                    } finally {
+                        wrapper.close();
+                    }
+                }
+            }));
+        }
+        for( Thread thread : threads ) thread.start();
+        for( Thread thread : threads ) thread.join();
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(20, results.size());
+        for( String result : results ) {
+            assertEquals(String.valueOf(INPUT_SIZE), result);
+        }
+        // nothing has been localized into the shared working directory of the task
+        assertFalse(new File(System.getProperty("user.dir"), input.getAbsolutePath()).exists());
+    }
+
+    @Test
+    public void testSameInputTwiceInLine() throws Exception {
+        // both commands localize the input onto the same local path
+        String ref = LocalHdfs.toRef(input);
+        String controlLine = "wc bytes --input=\"" + ref + "\" | wc bytes --input=\"" + ref + "\"";
+        conf.setBoolean(PropertyNames.ISOLATED_WORKING_DIR, true);
+        ToolWrapper wrapper = new ToolWrapper();
+        wrapper.setup(conf);
+        try {
+            for( int l = 0; l < 10; l++ ) {
+                assertEquals(String.valueOf(INPUT_SIZE), wrapper.wrap(controlLine).trim());
+            }
+        } finally {
+            wrapper.close();
+        }
+    }
+
+    /**
+     * Executes a control line streaming the input of wc bytes and checks
+     * that it neither fails nor waits for a stuck feeder.
+     */
+    private void assertStreamedLine(String controlLine) throws Exception {
+        // named pipes are not available, streamed inputs are copied
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        conf.set(PropertyNames.STREAMED_INPUTS, "wc/bytes/input");
+        conf.setBoolean(PropertyNames.ISOLATED_WORKING_DIR, true);
+        ToolWrapper wrapper = new ToolWrapper();
+        wrapper.setup(conf);
+        try {
+            for( int l = 0; l < 3; l++ ) {
+                long start = System.currentTimeMillis();
+                assertEquals(String.valueOf(INPUT_SIZE), wrapper.wrap(controlLine).trim());
+                assertTrue(System.currentTimeMillis() - start < 5000);
+            }
+        } finally {
+            wrapper.close();
+        }
+    }
+
+    @Test
+    public void testSameStreamedInputTwiceInLine() throws Exception {
+        // a named pipe can be read by one of the commands only
+        String ref = LocalHdfs.toRef(input);
+        assertStreamedLine("wc bytes --input=\"" + ref + "\" | wc bytes --input=\"" + ref + "\"");
+    }
+
+    @Test
+    public void testStreamedInputCopiedForOtherCommand() throws Exception {
+        // wc count takes the file as a copied input
+        String ref = LocalHdfs.toRef(input);
+        assertStreamedLine("wc bytes --input=\"" + ref + "\" | wc count --input=\"" + ref + "\"");
+    }
+
+    @Test
+    public void testTimedOutLineKeepsOutput() throws Exception {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        conf.setLong(PropertyNames.EXECUTION_TIMEOUT, 1);
+        ToolWrapper wrapper = new ToolWrapper();
+        wrapper.setup(conf);
+        ExecutionResult result = new ExecutionResult();
+        long start = System.currentTimeMillis();
+        try {
+            wrapper.wrap("slow partial", result);
+            fail("timeout not reported");
+        } catch (RuntimeException ex) {
+            assertEquals("timed out, exit -1", ex.getMessage());
+        } finally {
+            wrapper.close();
+        }
+        assertTrue(System.currentTimeMillis() - start < 10 * 1000);
+        assertEquals("partial\n", new String(result.getStdout().getBytes(), 0,
+                    result.getStdout().getLength()));
+    }
+
+}
@@ -22,14 +22,19 @@ import static org.junit.Assert.fail;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.junit.Before;
@@ -37,6 +42,7 @@ import org.junit.Test;
 
 import eu.scape_project.pt.repo.LocalToolRepository;
 import eu.scape_project.pt.util.PipedArgsParser;
+import eu.scape_project.pt.util.PropertyNames;
 
 public class ControlFileInputFormatTest {
     private static final Log LOG = LogFactory.getLog(ControlFileInputFormatTest.class);
@@ -107,42 +113,53 @@ public class ControlFileInputFormatTest {
     }
 
     @Test
-    public void testAddToLocationMap() {
-        Map<String, ArrayList<String>> locationMap = new HashMap<String, ArrayList<String>>();
-        String[] hosts = {"hostA", "hostB", "hostC"};
-
-        int l = 0;
-        ControlFileInputFormat.addToLocationMap(locationMap, hosts, "line1", ++l );
-        Map<String, ArrayList<String>> expectedMap = new HashMap<String, ArrayList<String>>(){{
-            put("hostA", new ArrayList<String>(){{
-                add("line1");
-            }});
-        }};
-        assertEquals(expectedMap, locationMap);
-
-        ControlFileInputFormat.addToLocationMap(locationMap, hosts, "line2", ++l );
-        expectedMap.put("hostB", new ArrayList<String>(){{
-            add("line2");
-        }});
-        assertEquals(expectedMap, locationMap);
-
-        ControlFileInputFormat.addToLocationMap(locationMap, hosts, "line3", ++l );
-        expectedMap.put("hostC", new ArrayList<String>(){{
-            add("line3");
-        }});
-        assertEquals(expectedMap, locationMap);
-
-        ControlFileInputFormat.addToLocationMap(locationMap, hosts, "line4", ++l );
-        expectedMap.get("hostA").add("line4");
-        assertEquals(expectedMap, locationMap);
-
-        ControlFileInputFormat.addToLocationMap(locationMap, hosts, "line5", ++l );
-        expectedMap.get("hostB").add("line5");
-        assertEquals(expectedMap, locationMap);
-
-        ControlFileInputFormat.addToLocationMap(locationMap, hosts, "line6", ++l );
-        expectedMap.get("hostC").add("line6");
-        assertEquals(expectedMap, locationMap);
+    public void testAddToLocationMap() throws IOException {
+        Configuration conf = new Configuration();
+        conf.setClass("fs.mockup.impl", MockupFileSystem.class, FileSystem.class);
+        conf.set("fs.defaultFS", "mockup://addToLocationMap");
+        MockupFileSystem fs = (MockupFileSystem) FileSystem.get(conf);
+        Path controlFile = new Path("addToLocationMapControlFile");
+        fs.addFile(controlFile.toString(), true, null);
+        FSDataOutputStream out = fs.create(controlFile);
+        try {
+            for( int l = 1; l <= 8; l++ ) {
+                String inputFile = "line" + l;
+                if( l <= 6 ) {
+                    // hostA is preferred over hostB over hostC
+                    fs.addFile(inputFile, true, new BlockLocation[]{
+                        new BlockLocation(null, new String[]{"hostA", "hostB", "hostC"}, 0, 0),
+                        new BlockLocation(null, new String[]{"hostA", "hostB"}, 0, 0),
+                        new BlockLocation(null, new String[]{"hostA"}, 0, 0)
+                    });
+                } else {
+                    fs.addFile(inputFile, true, new BlockLocation[]{
+                        new BlockLocation(null, new String[]{"hostA"}, 0, 0)
+                    });
+                }
+                out.write(("foo bar --input=\"" + inputFile + "\"\n").getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+
+        Map<String, ArrayList<String>> locationMap = ControlFileInputFormat.createLocationMap(
+                controlFile, conf, repo, new PipedArgsParser());
+
+        assertEquals(Arrays.asList(
+                "foo bar --input=\"line1\"",
+                "foo bar --input=\"line4\"",
+                "foo bar --input=\"line7\""), locationMap.get("hostA"));
+        assertEquals("foo bar --input=\"line2\"", locationMap.get("hostB").get(0));
+        assertEquals("foo bar --input=\"line5\"", locationMap.get("hostB").get(1));
+        assertEquals("foo bar --input=\"line3\"", locationMap.get("hostC").get(0));
+        assertEquals("foo bar --input=\"line6\"", locationMap.get("hostC").get(1));
+        // a line whose preferred hosts are all loaded above average is not dropped
+        int numLines = 0;
+        for( ArrayList<String> lines : locationMap.values() ) {
+            numLines += lines.size();
+        }
+        assertEquals(8, numLines);
+        assertEquals(3, locationMap.size());
     }
 
     @Test
@@ -270,4 +287,132 @@ public class ControlFileInputFormatTest {
             bis.close();
         }
     }
+
+    @Test
+    public void testWriteNewControlFileAndCreateWeightedSplits() throws IOException {
+        MockupFileSystem fs = new MockupFileSystem();
+        Path newControlFile = new Path("newControlFile");
+        fs.addFile("newControlFile", true, null);
+        Map<String, ArrayList<String>> locationMap = new LinkedHashMap<String, ArrayList<String>>();
+        Map<String, double[]> weightMap = new LinkedHashMap<String, double[]>();
+        for( int h = 1; h <= 2; h++ ) {
+            ArrayList<String> lines = new ArrayList<String>();
+            for( int l = 1; l <= 6; l++ ) {
+                lines.add("line" + h + "-" + l);
+            }
+            locationMap.put("host" + h, lines);
+        }
+        // the first line of host1 outweighs all others
+        weightMap.put("host1", new double[]{100, 1, 1, 1, 1, 1});
+        weightMap.put("host2", new double[]{1, 1, 1, 1, 1, 1});
+
+        List<FileSplit> splits = ControlFileInputFormat.writeNewControlFileAndCreateWeightedSplits(
+                newControlFile, fs, locationMap, weightMap, 3);
+
+        String[] expected = {
+            "line1-1\n",
+            "line1-2\nline1-3\nline1-4\nline1-5\nline1-6\n",
+            "line2-1\nline2-2\nline2-3\nline2-4\nline2-5\nline2-6\n"
+        };
+        String[][] expectedHosts = {{"host1"}, {"host1"}, {"host2"}};
+        assertEquals(expected.length, splits.size());
+        FSDataInputStream bis = fs.open(newControlFile);
+        try {
+            for( int i = 0; i < expected.length; i++ ) {
+                FileSplit split = splits.get(i);
+                byte[] content = new byte[(int)split.getLength()];
+                bis.read((int)split.getStart(), content, 0, (int)split.getLength());
+                assertEquals(expected[i], new String(content));
+                assertArrayEquals(expectedHosts[i], split.getLocations());
+            }
+        } finally {
+            bis.close();
+        }
+    }
+
+    @Test
+    public void testCreateRangeSplits() {
+        Path controlFile = new Path("controlFile");
+        Map<String, ArrayList<LineRange>> locationMap = new LinkedHashMap<String, ArrayList<LineRange>>();
+        locationMap.put("host1", new ArrayList<LineRange>(Arrays.asList(
+                new LineRange(0, 6), new LineRange(12, 6))));
+        locationMap.put("host2", new ArrayList<LineRange>(Arrays.asList(
+                new LineRange(6, 6))));
+        Map<String, double[]> weightMap = new LinkedHashMap<String, double[]>();
+        weightMap.put("host1", new double[]{1, 1});
+        weightMap.put("host2", new double[]{1});
+
+        List<FileSplit> splits = ControlFileInputFormat.createRangeSplits(
+                controlFile, locationMap, weightMap, 2);
+
+        assertEquals(2, splits.size());
+        ControlFileRangeSplit split = (ControlFileRangeSplit)splits.get(0);
+        assertArrayEquals(new long[]{0, 12}, split.getStarts());
+        assertArrayEquals(new String[]{"host1"}, split.getLocations());
+        split = (ControlFileRangeSplit)splits.get(1);
+        assertArrayEquals(new long[]{6}, split.getStarts());
+        assertArrayEquals(new String[]{"host2"}, split.getLocations());
+    }
+
+    /**
+     * Writes a control file of lines reading one file each, files of
+     * every eleventh line do not exist.
+     */
+    private static Path writeControlFile(MockupFileSystem fs, String name, int numLines,
+            int failingLine) throws IOException {
+        String[] hosts = {"hostA", "hostB", "hostC", "hostD", "hostE"};
+        Path controlFile = new Path(name);
+        fs.addFile(controlFile.toString(), true, null);
+        FSDataOutputStream out = fs.create(controlFile);
+        try {
+            for( int l = 0; l < numLines; l++ ) {
+                String inputFile = "in" + (l % 7) + "/file" + l;
+                fs.addFile(inputFile, l % 11 != 0, new BlockLocation[]{
+                    new BlockLocation(null, new String[]{
+                        hosts[l % hosts.length], hosts[(l + 1 + l % 3) % hosts.length]}, 0, 0)
+                });
+                String operation = l == failingLine ? "nosuchop" : "bar";
+                out.write(("foo " + operation + " --input=\"" + inputFile + "\"\n").getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+        return controlFile;
+    }
+
+    @Test
+    public void testCreateLocationMapParallel() throws IOException {
+        Configuration conf = new Configuration();
+        conf.setClass("fs.mockup.impl", MockupFileSystem.class, FileSystem.class);
+        conf.set("fs.defaultFS", "mockup://planning");
+        MockupFileSystem fs = (MockupFileSystem) FileSystem.get(conf);
+        Path controlFile = writeControlFile(fs, "planningControlFile", 200, -1);
+
+        conf.setInt(PropertyNames.PLANNING_THREADS, 1);
+        Map<String, ArrayList<String>> sequential = ControlFileInputFormat.createLocationMap(
+                controlFile, conf, repo, new PipedArgsParser());
+
+        conf.setInt(PropertyNames.PLANNING_THREADS, 4);
+        conf.setInt(PropertyNames.PLANNING_CHUNK_SIZE, 3);
+        Map<String, ArrayList<String>> parallel = ControlFileInputFormat.createLocationMap(
+                controlFile, conf, repo, new PipedArgsParser());
+
+        assertEquals(sequential, parallel);
+        int numLines = 0;
+        for( ArrayList<String> lines : parallel.values() ) {
+            numLines += lines.size();
+        }
+        assertEquals(200, numLines);
+
+        // a line failing to resolve on a planning thread fails planning
+        Path failingControlFile = writeControlFile(fs, "planningFailingControlFile", 200, 150);
+        try {
+            ControlFileInputFormat.createLocationMap(
+                    failingControlFile, conf, repo, new PipedArgsParser());
+            fail("resolver failure not reported");
+        } catch (IOException ex) {
+            assertEquals("operation nosuchop not found", ex.getMessage());
+        }
+    }
+
 }
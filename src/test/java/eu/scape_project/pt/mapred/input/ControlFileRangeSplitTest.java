@@ -0,0 +1,79 @@
+package eu.scape_project.pt.mapred.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.junit.Test;
+
+public class ControlFileRangeSplitTest {
+
+    // "line1\n" at 0, "line2\n" at 6, "line3\n" at 12, "line4\n" at 18
+    private static final String CONTROL_FILE = "line1\nline2\nline3\nline4\n";
+
+    @Test
+    public void testMergeAndSerialize() throws IOException {
+        ControlFileRangeSplit split = new ControlFileRangeSplit(new Path("control"),
+                Arrays.asList(new LineRange(18, 6), new LineRange(0, 6), new LineRange(6, 6)),
+                new String[]{"host1"});
+        assertArrayEquals(new long[]{18, 0}, split.getStarts());
+        assertArrayEquals(new long[]{6, 12}, split.getLengths());
+        assertEquals(18, split.getLength());
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        split.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        ControlFileRangeSplit read = new ControlFileRangeSplit();
+        read.readFields(in);
+        assertEquals(split.getPath(), read.getPath());
+        assertArrayEquals(split.getStarts(), read.getStarts());
+        assertArrayEquals(split.getLengths(), read.getLengths());
+        assertEquals(split.getLength(), read.getLength());
+    }
+
+    @Test
+    public void testRecordReader() throws IOException {
+        File file = File.createTempFile("control", ".txt");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(CONTROL_FILE.getBytes());
+        } finally {
+            fos.close();
+        }
+        ControlFileRangeSplit split = new ControlFileRangeSplit(
+                new Path(file.toURI()),
+                Arrays.asList(new LineRange(18, 6), new LineRange(6, 6)),
+                new String[0]);
+
+        ControlFileRangeRecordReader reader = new ControlFileRangeRecordReader();
+        reader.initialize(split, new TaskAttemptContextImpl(new Configuration(),
+                new TaskAttemptID()));
+        try {
+            assertTrue(reader.nextKeyValue());
+            assertEquals(18, reader.getCurrentKey().get());
+            assertEquals("line4", reader.getCurrentValue().toString());
+            assertTrue(reader.nextKeyValue());
+            assertEquals(6, reader.getCurrentKey().get());
+            assertEquals("line2", reader.getCurrentValue().toString());
+            assertFalse(reader.nextKeyValue());
+            assertEquals(1.0f, reader.getProgress(), 0);
+        } finally {
+            reader.close();
+        }
+    }
+
+}
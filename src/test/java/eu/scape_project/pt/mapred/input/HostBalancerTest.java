@@ -0,0 +1,76 @@
+package eu.scape_project.pt.mapred.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HostBalancerTest {
+
+    @Test
+    public void testPreferredHostsAreBalanced() {
+        HostBalancer<String> balancer = new HostBalancer<String>();
+        String[] hosts = {"hostA", "hostB", "hostC"};
+        for (int l = 1; l <= 6; l++) {
+            balancer.add(hosts, "line" + l);
+        }
+
+        Map<String, ArrayList<String>> locationMap = balancer.getLocationMap();
+        assertEquals(Arrays.asList("line1", "line4"), locationMap.get("hostA"));
+        assertEquals(Arrays.asList("line2", "line5"), locationMap.get("hostB"));
+        assertEquals(Arrays.asList("line3", "line6"), locationMap.get("hostC"));
+    }
+
+    @Test
+    public void testOverloadedHostFallsBackToLeastLoaded() {
+        HostBalancer<String> balancer = new HostBalancer<String>();
+        balancer.add(new String[]{"hostA", "hostB", "hostC"}, "line1");
+        balancer.add(new String[]{"hostA"}, "line2");
+        balancer.add(new String[]{"hostA"}, "line3");
+        balancer.add(new String[]{"hostA"}, "line4");
+
+        Map<String, ArrayList<String>> locationMap = balancer.getLocationMap();
+        assertEquals(Arrays.asList("line1", "line4"), locationMap.get("hostA"));
+        assertEquals(Arrays.asList("line2"), locationMap.get("hostB"));
+        assertEquals(Arrays.asList("line3"), locationMap.get("hostC"));
+    }
+
+    @Test
+    public void testLinesWithoutHostsAreKept() {
+        HostBalancer<String> balancer = new HostBalancer<String>();
+        balancer.add(new String[0], "line1");
+        assertEquals(Arrays.asList("line1"),
+                balancer.getLocationMap().get(HostBalancer.ANY_HOST));
+
+        balancer = new HostBalancer<String>();
+        balancer.add(new String[0], "line1");
+        balancer.add(new String[]{"hostA"}, "line2");
+        balancer.add(new String[]{"hostB"}, "line3");
+
+        Map<String, ArrayList<String>> locationMap = balancer.getLocationMap();
+        assertEquals(2, locationMap.size());
+        assertEquals(Arrays.asList("line2", "line1"), locationMap.get("hostA"));
+        assertEquals(Arrays.asList("line3"), locationMap.get("hostB"));
+    }
+
+    @Test
+    public void testWeightedLines() {
+        HostBalancer<String> balancer = new HostBalancer<String>();
+        String[] hosts = {"hostA", "hostB"};
+        balancer.add(hosts, "heavy", 10);
+        balancer.add(hosts, "light1", 1);
+        balancer.add(hosts, "light2", 1);
+
+        Map<String, ArrayList<String>> locationMap = balancer.getLocationMap();
+        assertEquals(Arrays.asList("heavy"), locationMap.get("hostA"));
+        assertEquals(Arrays.asList("light1", "light2"), locationMap.get("hostB"));
+        Map<String, double[]> weightMap = balancer.getWeightMap();
+        assertArrayEquals(new double[]{10}, weightMap.get("hostA"), 0);
+        assertArrayEquals(new double[]{1, 1}, weightMap.get("hostB"), 0);
+    }
+
+}
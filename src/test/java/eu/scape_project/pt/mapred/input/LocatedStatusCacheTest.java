@@ -0,0 +1,135 @@
+package eu.scape_project.pt.mapred.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocatedStatusCacheTest {
+
+    private FileSystem fs;
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        fs = FileSystem.getLocal(new Configuration());
+        dir = Files.createTempDirectory("locatedstatus").toFile();
+        new File(dir, "a").createNewFile();
+        new File(dir, "sub").mkdir();
+        new File(dir, "sub" + File.separator + "b").createNewFile();
+    }
+
+    @Test
+    public void testGetStatus() throws IOException {
+        LocatedStatusCache cache = new LocatedStatusCache(fs);
+
+        FileStatus a = cache.getStatus(new Path(dir.getPath(), "a"));
+        assertNotNull(a);
+        assertFalse(a.isDirectory());
+        assertNotNull(cache.getBlockLocations(a));
+
+        FileStatus sub = cache.getStatus(new Path(dir.getPath(), "sub"));
+        assertNotNull(sub);
+        assertTrue(sub.isDirectory());
+
+        assertNull(cache.getStatus(new Path(dir.getPath(), "missing")));
+        assertNull(cache.getStatus(new Path(dir.getPath(), "missing/c")));
+    }
+
+    @Test
+    public void testGetFilesInDir() throws IOException {
+        LocatedStatusCache cache = new LocatedStatusCache(fs, 1);
+
+        List<Path> files = cache.getFilesInDir(new Path(dir.getPath()));
+        Set<String> names = new HashSet<String>();
+        for( Path file : files ) {
+            names.add(file.getName());
+        }
+        assertEquals(2, files.size());
+        assertTrue(names.contains("a"));
+        assertTrue(names.contains("b"));
+    }
+
+    @Test
+    public void testListsMockupFileSystem() throws IOException {
+        MockupFileSystem mockup = new MockupFileSystem();
+        mockup.addFile("/in/a", true, new BlockLocation[]{
+            new BlockLocation(null, new String[]{"hostA"}, 0, 0)
+        });
+        mockup.addFile("/in/missing", false, null);
+        mockup.addFile("/in/sub/b", true, null);
+        LocatedStatusCache cache = new LocatedStatusCache(mockup);
+
+        FileStatus a = cache.getStatus(new Path("/in/a"));
+        assertEquals("hostA", cache.getBlockLocations(a)[0].getHosts()[0]);
+        assertNull(cache.getStatus(new Path("/in/missing")));
+        assertTrue(cache.getStatus(new Path("/in/sub")).isDirectory());
+        assertEquals(1, cache.getFilesInDir(new Path("/in/sub")).size());
+        // resolved from listings, not file by file
+        assertNotNull(cache.getFingerprints());
+    }
+
+    private static MockupFileSystem createDirectories() {
+        MockupFileSystem mockup = new MockupFileSystem();
+        for( String file : new String[]{"/d1/a", "/d1/b", "/d2/c", "/d2/d", "/big/e", "/big/f", "/big/g"} ) {
+            mockup.addFile(file, true, new BlockLocation[]{
+                new BlockLocation(null, new String[]{"host" + file.charAt(file.length() - 1)}, 0, 0)
+            });
+        }
+        return mockup;
+    }
+
+    @Test
+    public void testCachedEntriesAreBounded() throws IOException {
+        MockupFileSystem mockup = createDirectories();
+        LocatedStatusCache cache = new LocatedStatusCache(mockup, 3);
+
+        assertNotNull(cache.getStatus(new Path("/d1/a")));
+        assertEquals(2, cache.getNumEntries());
+        // the listing of /d1 is dropped to make room for the one of /d2
+        FileStatus c = cache.getStatus(new Path("/d2/c"));
+        assertEquals("hostc", cache.getBlockLocations(c)[0].getHosts()[0]);
+        assertEquals(2, cache.getNumEntries());
+        FileStatus b = cache.getStatus(new Path("/d1/b"));
+        assertEquals("hostb", cache.getBlockLocations(b)[0].getHosts()[0]);
+        assertEquals(2, cache.getNumEntries());
+        assertEquals(2, cache.getFingerprints().size());
+    }
+
+    @Test
+    public void testOversizedDirectoryIsResolvedFileByFile() throws IOException {
+        MockupFileSystem mockup = createDirectories();
+        LocatedStatusCache cache = new LocatedStatusCache(mockup, 2);
+
+        FileStatus e = cache.getStatus(new Path("/big/e"));
+        assertEquals("hoste", cache.getBlockLocations(e)[0].getHosts()[0]);
+        assertNull(cache.getStatus(new Path("/big/missing")));
+        assertEquals(3, cache.getFilesInDir(new Path("/big")).size());
+        // only a marker of the directory is kept
+        assertEquals(1, cache.getNumEntries());
+        // the directory is still fingerprinted as a whole
+        Map<String, Long> fingerprints = cache.getFingerprints();
+        assertNotNull(fingerprints);
+        assertEquals(LocatedStatusCache.fingerprint(Arrays.asList(mockup.listStatus(new Path("/big")))),
+                (long) fingerprints.get("/big"));
+    }
+
+}
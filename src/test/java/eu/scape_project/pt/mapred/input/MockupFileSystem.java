@@ -3,10 +3,14 @@ package eu.scape_project.pt.mapred.input;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -16,7 +20,9 @@ import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.util.Progressable;
 
@@ -99,6 +105,31 @@ public class MockupFileSystem extends FileSystem {
         return new FileStatus(0, false, 0, 0, 0, arg0);
     }
 
+    /**
+     * Lists a directory like {@link #listStatus(Path)} with the block
+     * locations of its files.
+     */
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path dir) throws IOException {
+        final FileStatus[] listing = listStatus(dir);
+        return new RemoteIterator<LocatedFileStatus>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < listing.length;
+            }
+
+            @Override
+            public LocatedFileStatus next() throws IOException {
+                if( !hasNext() ) throw new NoSuchElementException();
+                FileStatus status = listing[i++];
+                return new LocatedFileStatus(status, status.isDirectory()
+                        ? null : getFileBlockLocations(status, 0, status.getLen()));
+            }
+        };
+    }
+
     @Override
     public URI getUri() {
         return null;
@@ -109,9 +140,34 @@ public class MockupFileSystem extends FileSystem {
         return null;
     }
 
-    @Override
-    public FileStatus[] listStatus(Path arg0) {
-        return null;
+    /**
+     * Lists the existing files added below a directory, and the directories
+     * on their paths.
+     */
+    @Override
+    public FileStatus[] listStatus(Path dir) throws FileNotFoundException {
+        Map<String, FileStatus> children = new TreeMap<String, FileStatus>();
+        boolean found = false;
+        for( Map.Entry<String, MockupFile> entry : mockupFiles.entrySet() ) {
+            Path child = new Path(entry.getKey());
+            boolean isDir = false;
+            Path parent = child.getParent();
+            // "." is its own parent
+            while( parent != null && !parent.equals(child) && !parent.equals(dir) ) {
+                child = parent;
+                parent = child.getParent();
+                isDir = true;
+            }
+            if( parent == null || !parent.equals(dir) ) continue;
+            found = true;
+            if( isDir || entry.getValue().exists() ) {
+                children.put(child.getName(), new FileStatus(0, isDir, 0, 0, 0, child));
+            }
+        }
+        if( !found ) {
+            throw new FileNotFoundException(dir + " does not exist");
+        }
+        return children.values().toArray(new FileStatus[children.size()]);
     }
 
     @Override
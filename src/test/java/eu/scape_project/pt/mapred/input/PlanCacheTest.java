@@ -0,0 +1,85 @@
+package eu.scape_project.pt.mapred.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.scape_project.pt.repo.LocalToolRepository;
+import eu.scape_project.pt.util.PropertyNames;
+
+public class PlanCacheTest {
+
+    private FileSystem fs;
+    private File inputDir;
+    private PlanCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        fs = FileSystem.getLocal(new Configuration());
+        inputDir = Files.createTempDirectory("planinputs").toFile();
+        new File(inputDir, "a").createNewFile();
+        File cacheDir = Files.createTempDirectory("plancache").toFile();
+        cache = new PlanCache(fs, new Path(cacheDir.getPath()));
+    }
+
+    private PlanCache.Plan createPlan() throws IOException {
+        LocatedStatusCache statusCache = new LocatedStatusCache(fs);
+        statusCache.getStatus(new Path(inputDir.getPath(), "a"));
+        Map<String, Long> fingerprints = statusCache.getFingerprints();
+        assertNotNull(fingerprints);
+
+        HostBalancer<String> balancer = new HostBalancer<String>(true);
+        balancer.add(new String[0], "line1", 1);
+        balancer.add(new String[]{"hostA"}, "line2", 2.5);
+        balancer.add(new String[]{"hostB"}, "line3", 1);
+        return new PlanCache.Plan(balancer.getHosts(), balancer.getAssignment(),
+                balancer.getLineWeights(), fingerprints);
+    }
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        cache.store("key", createPlan());
+        assertNull(cache.load("otherkey", fs));
+
+        PlanCache.Plan plan = cache.load("key", fs);
+        assertNotNull(plan);
+        assertEquals(3, plan.getNumLines());
+        // the line without hosts went to the least loaded host
+        assertEquals("hostB", plan.getHost(0));
+        assertEquals("hostA", plan.getHost(1));
+        assertEquals("hostB", plan.getHost(2));
+        assertEquals(2.5, plan.getWeight(1), 0);
+
+        // a changed input directory invalidates the plan
+        new File(inputDir, "b").createNewFile();
+        assertNull(cache.load("key", fs));
+    }
+
+    @Test
+    public void testGetKey() throws IOException {
+        URL res = this.getClass().getClassLoader().getResource("toolspecs");
+        LocalToolRepository repo = new LocalToolRepository(res.getFile());
+        Path controlFile = new Path(inputDir.getPath(), "a");
+
+        Configuration conf = new Configuration();
+        String key = PlanCache.getKey(fs, controlFile, repo, new LineWeigher(conf));
+        assertEquals(key, PlanCache.getKey(fs, controlFile, repo, new LineWeigher(conf)));
+
+        conf.set(PropertyNames.SPLIT_WEIGHT, LineWeigher.BYTES);
+        assertFalse(key.equals(PlanCache.getKey(fs, controlFile, repo, new LineWeigher(conf))));
+    }
+
+}
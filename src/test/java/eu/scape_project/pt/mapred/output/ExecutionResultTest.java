@@ -0,0 +1,62 @@
+package eu.scape_project.pt.mapred.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+public class ExecutionResultTest {
+
+    private static ExecutionResult copy(ExecutionResult result, ExecutionResult into) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        result.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        into.readFields(in);
+        return into;
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        ExecutionResult result = new ExecutionResult();
+        result.setExitCode(3);
+        result.setDuration(1234);
+        result.getStdout().set("output".getBytes(), 0, 6);
+        result.addOutputRef("hdfs:///out/a.xml");
+        result.addOutputRef("hdfs:///out/stdout.txt");
+
+        ExecutionResult read = copy(result, new ExecutionResult());
+        assertEquals(3, read.getExitCode());
+        assertEquals(1234, read.getDuration());
+        assertArrayEquals("output".getBytes(),
+                Arrays.copyOf(read.getStdout().getBytes(), read.getStdout().getLength()));
+        assertEquals(Arrays.asList("hdfs:///out/a.xml", "hdfs:///out/stdout.txt"), read.getOutputRefs());
+        assertFalse(read.isError());
+        assertNull(read.getErrorClass());
+    }
+
+    @Test
+    public void testErrorAndReuse() throws IOException {
+        ExecutionResult result = new ExecutionResult();
+        result.setError(new IllegalStateException("broken"));
+
+        ExecutionResult reused = new ExecutionResult();
+        reused.addOutputRef("stale");
+        reused.getStdout().set("stale".getBytes(), 0, 5);
+        copy(result, reused);
+        assertTrue(reused.isError());
+        assertEquals(IllegalStateException.class.getName(), reused.getErrorClass());
+        assertEquals("broken", reused.getErrorMessage());
+        assertTrue(reused.getOutputRefs().isEmpty());
+        assertEquals(0, reused.getStdout().getLength());
+    }
+
+}
@@ -0,0 +1,67 @@
+package eu.scape_project.pt.proc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CommandAnalyzerTest {
+
+    private static String[] toArgv(String strCmd, Map<String, String> params) {
+        CommandAnalyzer analyzer = CommandAnalyzer.analyze(strCmd);
+        return analyzer == null ? null : analyzer.toArgv(params);
+    }
+
+    @Test
+    public void testSplitsPlainWords() {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("input", "a.txt b.txt");
+        params.put("output", "out.tar");
+        assertArrayEquals(new String[]{"tar", "-cf", "out.tar", "a.txt", "b.txt"},
+                toArgv("tar  -cf ${output} ${input}", params));
+    }
+
+    @Test
+    public void testQuoting() {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("input", "my file.txt");
+        params.put("empty", null);
+        assertArrayEquals(new String[]{"convert", "my file.txt", "x.png", "a b", "c\"d", "", "-"},
+                toArgv("convert \"${input}\" 'x.png' a\\ b \"c\\\"d\" '${empty}' -${empty}", params));
+        assertArrayEquals(new String[]{"file", "pre-my", "file.txt-post"},
+                toArgv("file pre-${input}-post", params));
+    }
+
+    @Test
+    public void testShellSyntaxNeedsShell() {
+        Map<String, String> params = new HashMap<String, String>();
+        assertNull(toArgv("file -b - | head -1", params));
+        assertNull(toArgv("cat a > b", params));
+        assertNull(toArgv("cd /tmp && ls", params));
+        assertNull(toArgv("echo $HOME", params));
+        assertNull(toArgv("ls *.txt", params));
+        assertNull(toArgv("LANG=C sort a", params));
+        assertNull(toArgv("echo \"unterminated", params));
+        assertNull(toArgv("echo a\nb", params));
+        assertNull(toArgv("cd /tmp", params));
+        assertNull(toArgv("cmd ${unknown}", params));
+    }
+
+    @Test
+    public void testValuesWithShellSyntaxNeedShell() {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("text", "$1 costs \\$2");
+        params.put("glob", "*.txt");
+        params.put("quote", "it's");
+        assertNull(toArgv("echo ${text}", params));
+        assertNull(toArgv("echo \"${text}\"", params));
+        assertNull(toArgv("ls ${glob}", params));
+        assertNull(toArgv("echo '${quote}'", params));
+        assertArrayEquals(new String[]{"ls", "*.txt", "$1 costs \\$2"},
+                toArgv("ls \"${glob}\" '${text}'", params));
+    }
+
+}
@@ -0,0 +1,62 @@
+package eu.scape_project.pt.proc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CommandTemplateTest {
+
+    @Test
+    public void testRender() {
+        CommandTemplate template = new CommandTemplate("tar -cf ${output} ${input}");
+        assertArrayEquals(new String[]{"output", "input"}, template.getKeys());
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("input", "a.txt b.txt");
+        params.put("output", "out.tar");
+        assertEquals("tar -cf out.tar a.txt b.txt", template.render(params));
+    }
+
+    @Test
+    public void testRenderSpecialCharacters() {
+        CommandTemplate template = new CommandTemplate("echo ${text}");
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("text", "$1 costs \\$2");
+        assertEquals("echo $1 costs \\$2", template.render(params));
+    }
+
+    @Test
+    public void testRenderUnknownAndIncompletePlaceholders() {
+        CommandTemplate template = new CommandTemplate("cmd ${known} ${unknown} ${open");
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("known", "x");
+        assertEquals("cmd x ${unknown} ${open", template.render(params));
+
+        params.put("known", null);
+        assertEquals("cmd  ${unknown} ${open", template.render(params));
+    }
+
+    @Test
+    public void testRenderWithoutPlaceholders() {
+        CommandTemplate template = new CommandTemplate("file -b -");
+        assertEquals("file -b -", template.render(new HashMap<String, String>()));
+    }
+
+    @Test
+    public void testRenderArgv() {
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("input", "my file.txt");
+        params.put("output", "out.txt");
+        assertArrayEquals(new String[]{"cp", "my file.txt", "out.txt"},
+                new CommandTemplate("cp \"${input}\" ${output}").renderArgv(params));
+        assertNull(new CommandTemplate("cat ${input} > ${output}").renderArgv(params));
+    }
+
+}
@@ -0,0 +1,66 @@
+package eu.scape_project.pt.proc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ProcessorTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testCopyLarge() throws IOException {
+        // not a multiple of the buffer size
+        byte[] bytes = randomBytes(3 * 1024 + 17);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length, Processor.copyLarge(new ByteArrayInputStream(bytes), out, 1024));
+        assertArrayEquals(bytes, out.toByteArray());
+    }
+
+    @Test
+    public void testCopyLargeEmpty() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, Processor.copyLarge(new ByteArrayInputStream(new byte[0]), out, 1024));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void testCopyLargeShortReads() throws IOException {
+        byte[] bytes = randomBytes(10000);
+        // like a process pipe, hands out fewer bytes than asked for
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(bytes.length, Processor.copyLarge(in, out, 4096));
+        assertArrayEquals(bytes, out.toByteArray());
+    }
+
+    @Test
+    public void testCopyLargeChangingBufferSizes() throws IOException {
+        // pooled buffers of another size must not be used
+        for( int bufferSize : new int[]{ 16, Processor.DEFAULT_PIPE_BUFFER_SIZE, 16, 100 } ) {
+            byte[] bytes = randomBytes(bufferSize * 3 + 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(bytes.length,
+                    Processor.copyLarge(new ByteArrayInputStream(bytes), out, bufferSize));
+            assertArrayEquals(bytes, out.toByteArray());
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package eu.scape_project.pt.proc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WorkerPoolTest {
+
+    /**
+     * Generic shell worker executing each requested command in a sub-shell.
+     */
+    private static final String SHELL_WORKER =
+        "while IFS=\"$(printf '\\t')\" read -r dir cmd; do "
+        + "if [ \"$dir\" != \"" + WorkerPool.PING + "\" ]; then (cd \"$dir\" && sh -c \"$cmd\"); fi; "
+        + "echo \"" + WorkerPool.EXIT_MARKER + "$?\"; done";
+
+    private WorkerPool pool;
+
+    @Before
+    public void setUp() {
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        Map<String, String> commands = new HashMap<String, String>();
+        commands.put("shell.exec", SHELL_WORKER);
+        pool = new WorkerPool(commands, 1, 2, 0);
+    }
+
+    @After
+    public void tearDown() {
+        if( pool != null ) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Reads a response to its end.
+     */
+    private static String read(WorkerPool.Response response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int n;
+        while( (n = response.read(buffer)) >= 0 ) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString();
+    }
+
+    @Test
+    public void testExecute() throws IOException {
+        assertTrue(pool.isPooled("shell.exec"));
+        assertFalse(pool.isPooled("shell.other"));
+
+        File dir = Files.createTempDirectory("worker").toFile();
+        new File(dir, "marker").createNewFile();
+
+        WorkerPool.Response response = pool.execute("shell.exec", dir, "ls; echo '#not the end'");
+        assertEquals("marker\n#not the end\n", read(response));
+        assertTrue(response.isComplete());
+        assertEquals(0, response.getExitCode());
+
+        response = pool.execute("shell.exec", dir, "exit 3");
+        assertEquals("", read(response));
+        assertEquals(3, response.getExitCode());
+        assertEquals(1, pool.getStarted());
+
+        // the worker is recycled after two requests
+        response = pool.execute("shell.exec", dir, "echo again");
+        assertEquals("again\n", read(response));
+        assertEquals(2, pool.getStarted());
+    }
+
+    @Test
+    public void testPingsAreNoRequests() throws IOException {
+        Map<String, String> commands = new HashMap<String, String>();
+        commands.put("shell.exec", SHELL_WORKER);
+        // every reuse is preceded by a ping
+        WorkerPool pinging = new WorkerPool(commands, 1, 3, 0);
+        try {
+            File dir = Files.createTempDirectory("worker").toFile();
+            for( int i = 0; i < 3; i++ ) {
+                WorkerPool.Response response = pinging.execute("shell.exec", dir, "true");
+                read(response);
+                assertEquals(0, response.getExitCode());
+            }
+            assertEquals(1, pinging.getStarted());
+        } finally {
+            pinging.close();
+        }
+    }
+
+    @Test
+    public void testWorkerOutlivesRequestDirectory() throws IOException {
+        // answers every request with the directory the worker was started in
+        Map<String, String> commands = new HashMap<String, String>();
+        commands.put("shell.start", "start=\"$(pwd)\"; while read -r line; do "
+            + "if [ \"$line\" != \"" + WorkerPool.PING + "\" ]; then echo \"$start\"; fi; "
+            + "echo \"" + WorkerPool.EXIT_MARKER + "0\"; done");
+        WorkerPool starting = new WorkerPool(commands, 1, 10, Long.MAX_VALUE);
+        try {
+            File first = Files.createTempDirectory("worker").toFile();
+            String started = read(starting.execute("shell.start", first, "ignored")).trim();
+            assertEquals(new File(System.getProperty("user.dir")).getCanonicalPath(),
+                    new File(started).getCanonicalPath());
+
+            // the directory of the first request is gone, the worker is reused
+            assertTrue(first.delete());
+            File second = Files.createTempDirectory("worker").toFile();
+            WorkerPool.Response response = starting.execute("shell.start", second, "ignored");
+            read(response);
+            assertEquals(0, response.getExitCode());
+            assertEquals(1, starting.getStarted());
+            second.delete();
+        } finally {
+            starting.close();
+        }
+    }
+
+    @Test
+    public void testOutputWithoutLineBreak() throws IOException {
+        File dir = Files.createTempDirectory("worker").toFile();
+        // the worker answers foo#TOMAR-EXIT 0
+        WorkerPool.Response response = pool.execute("shell.exec", dir, "printf foo");
+        assertEquals("foo", read(response));
+        assertEquals(0, response.getExitCode());
+
+        // only the marker at the end of the line counts
+        response = pool.execute("shell.exec", dir,
+                "printf '#TOMAR-EXIT 1 #TOMAR-EXIT 2 ##TOMAR-EXIT'; exit 4");
+        assertEquals("#TOMAR-EXIT 1 #TOMAR-EXIT 2 ##TOMAR-EXIT", read(response));
+        assertEquals(4, response.getExitCode());
+        assertEquals(1, pool.getStarted());
+        dir.delete();
+    }
+
+    @Test
+    public void testLargeOutputIsStreamed() throws IOException {
+        File dir = Files.createTempDirectory("worker").toFile();
+        // more than a pipe holds, the worker blocks until it is read
+        WorkerPool.Response response = pool.execute("shell.exec", dir,
+                "i=0; while [ $i -lt 20000 ]; do echo \"line $i\"; i=$((i+1)); done");
+        String output = read(response);
+        assertTrue(output.startsWith("line 0\nline 1\n"));
+        assertTrue(output.endsWith("line 19999\n"));
+        assertEquals(0, response.getExitCode());
+        dir.delete();
+    }
+
+    @Test
+    public void testUnreadResponseStopsWorker() throws IOException {
+        File dir = Files.createTempDirectory("worker").toFile();
+        WorkerPool.Response response = pool.execute("shell.exec", dir, "echo unread");
+        response.close();
+        assertFalse(response.isComplete());
+        assertEquals(-1, response.getExitCode());
+        // the next request is not answered with the rest of the previous one
+        response = pool.execute("shell.exec", dir, "echo next");
+        assertEquals("next\n", read(response));
+        assertEquals(2, pool.getStarted());
+        dir.delete();
+    }
+
+}
@@ -0,0 +1,56 @@
+package eu.scape_project.pt.repo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.net.URL;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.scape_project.tool.toolwrapper.data.tool_spec.Tool;
+
+public class CachingRepositoryTest {
+
+    private LocalToolRepository repo;
+
+    @Before
+    public void setUp() throws IOException {
+        URL res = this.getClass().getClassLoader().getResource("toolspecs");
+        repo = new LocalToolRepository(res.getFile());
+    }
+
+    @Test
+    public void testGetToolIsCached() throws IOException {
+        CachingRepository cache = new CachingRepository(repo, 4, 0);
+
+        Tool tool = cache.getTool("file");
+        assertEquals("file", tool.getName());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        assertSame(tool, cache.getTool("file"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        CachingRepository cache = new CachingRepository(repo, 2, Long.MAX_VALUE);
+
+        Tool file = cache.getTool("file");
+        cache.getTool("tar");
+        // touch "file" so that "tar" becomes the eldest entry
+        cache.getTool("file");
+        cache.getTool("ps2pdf");
+        assertEquals(2, cache.size());
+
+        assertSame(file, cache.getTool("file"));
+        assertEquals(3, cache.getMisses());
+
+        cache.getTool("tar");
+        assertEquals(4, cache.getMisses());
+    }
+
+}
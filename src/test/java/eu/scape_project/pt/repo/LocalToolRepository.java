@@ -37,8 +37,7 @@ public class LocalToolRepository implements Repository {
      */
     @Override
     public Tool getTool(String toolName ) throws IOException {
-        File file = new File( this.toolsDir.getPath() + 
-                System.getProperty("file.separator") + toolName + ".xml");
+        File file = getToolFile(toolName);
 
         final FileInputStream fis = new FileInputStream(file);
         try {
@@ -52,9 +51,23 @@ public class LocalToolRepository implements Repository {
         }
     }
 
+    @Override
+    public long getModificationTime(String toolName) throws IOException {
+        File file = getToolFile(toolName);
+        if( !file.exists() ) {
+            throw new FileNotFoundException(file.toString());
+        }
+        return file.lastModified();
+    }
+
     @Override
     public String[] getToolList() {
         return this.toolsDir.list();
     }
+
+    private File getToolFile(String toolName) {
+        return new File( this.toolsDir.getPath() + 
+                System.getProperty("file.separator") + toolName + ".xml");
+    }
     
 }
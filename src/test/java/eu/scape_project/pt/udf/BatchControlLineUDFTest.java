@@ -0,0 +1,124 @@
+package eu.scape_project.pt.udf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultDataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.scape_project.pt.ToolWrapper;
+import eu.scape_project.pt.util.PropertyNames;
+
+public class BatchControlLineUDFTest {
+
+    private static final String TOOLSPECS = "toolspecs";
+
+    /**
+     * Wrapper executing lines "&lt;millis&gt; &lt;output&gt;" by sleeping
+     * for the given time and returning the output, and failing lines
+     * "fail &lt;message&gt;".
+     */
+    static class SleepingWrapper extends ToolWrapper {
+        @Override
+        public String wrap(String controlline) throws Exception {
+            String[] parts = controlline.split(" ", 2);
+            if( parts[0].equals("fail") ) throw new IOException(parts[1]);
+            Thread.sleep(Long.parseLong(parts[0]));
+            return parts[1];
+        }
+    }
+
+    private final TupleFactory tupleFactory = TupleFactory.getInstance();
+    private final Configuration conf = new Configuration(false);
+    private final List<ToolWrapperPool> pools = new ArrayList<ToolWrapperPool>();
+    private BatchControlLineUDF udf;
+
+    @Before
+    public void setUp() {
+        conf.setInt(PropertyNames.UDF_POOL_SIZE, 4);
+        udf = new BatchControlLineUDF() {
+            @Override
+            Configuration getConf() {
+                return conf;
+            }
+
+            @Override
+            ToolWrapperPool createPool(Configuration conf, int poolSize) {
+                ToolWrapperPool pool = new ToolWrapperPool(conf, poolSize) {
+                    @Override
+                    ToolWrapper newWrapper(String toolspecsPath) {
+                        return new SleepingWrapper();
+                    }
+                };
+                pools.add(pool);
+                return pool;
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        udf.finish();
+    }
+
+    private Tuple input(String... lines) {
+        DataBag bag = new DefaultDataBag();
+        for( String line : lines ) {
+            bag.add(tupleFactory.newTuple(Arrays.<Object>asList(TOOLSPECS, line)));
+        }
+        return tupleFactory.newTuple(Arrays.<Object>asList(bag));
+    }
+
+    private static void assertOutputs(DataBag result, String... outputs) throws IOException {
+        assertEquals(outputs.length, result.size());
+        Iterator<Tuple> it = result.iterator();
+        for( String output : outputs ) {
+            Tuple tuple = it.next();
+            assertTrue(((String) tuple.get(0)).endsWith(" " + output));
+            assertEquals(output, tuple.get(1));
+        }
+    }
+
+    @Test
+    public void testResultsInInputOrder() throws IOException {
+        // later lines finish first
+        DataBag result = udf.exec(input("400 a", "300 b", "200 c", "100 d", "0 e"));
+        assertOutputs(result, "a", "b", "c", "d", "e");
+        // the wrappers have been released
+        assertEquals(4, pools.get(0).getNumIdle());
+    }
+
+    @Test
+    public void testResultsInInputOrderAcrossBatches() throws IOException {
+        conf.setInt(PropertyNames.UDF_BATCH_SIZE, 2);
+        DataBag result = udf.exec(input("200 a", "0 b", "100 c", "0 d", "50 e"));
+        assertOutputs(result, "a", "b", "c", "d", "e");
+    }
+
+    @Test
+    public void testFailingLineFailsBag() throws IOException {
+        try {
+            udf.exec(input("100 a", "fail no such operation", "0 c"));
+            fail("failing line not reported");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+            assertEquals("no such operation", ex.getCause().getMessage());
+        }
+        // the next bag is executed from scratch
+        assertOutputs(udf.exec(input("0 d")), "d");
+    }
+
+}
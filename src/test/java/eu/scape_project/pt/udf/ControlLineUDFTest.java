@@ -0,0 +1,89 @@
+package eu.scape_project.pt.udf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.scape_project.pt.ToolWrapper;
+
+public class ControlLineUDFTest {
+
+    /**
+     * Wrapper echoing its toolspec path and the control line, recording
+     * whether it has been closed.
+     */
+    static class EchoWrapper extends ToolWrapperPoolTest.TestWrapper {
+        EchoWrapper(String toolspecsPath) {
+            super(toolspecsPath);
+        }
+
+        @Override
+        public String wrap(String controlline) {
+            return toolspecsPath + ": " + controlline;
+        }
+    }
+
+    private final TupleFactory tupleFactory = TupleFactory.getInstance();
+    private final List<EchoWrapper> wrappers = new ArrayList<EchoWrapper>();
+    private ControlLineUDF udf;
+
+    @Before
+    public void setUp() {
+        udf = new ControlLineUDF() {
+            @Override
+            ToolWrapper newWrapper(String toolspecsPath) {
+                EchoWrapper wrapper = new EchoWrapper(toolspecsPath);
+                wrappers.add(wrapper);
+                return wrapper;
+            }
+        };
+    }
+
+    private String exec(String toolspecsPath, String line) throws IOException {
+        Tuple result = udf.exec(tupleFactory.newTuple(Arrays.<Object>asList(toolspecsPath, line)));
+        return (String) result.get(0);
+    }
+
+    @Test
+    public void testWrapperIsReusedForSamePath() throws IOException {
+        assertEquals("a: line1", exec("a", "line1"));
+        assertEquals("a: line2", exec("a", "line2"));
+        assertEquals(1, wrappers.size());
+        assertFalse(wrappers.get(0).closed);
+    }
+
+    @Test
+    public void testWrapperIsReplacedForOtherPath() throws IOException {
+        assertEquals("a: line1", exec("a", "line1"));
+        assertEquals("b: line2", exec("b", "line2"));
+        assertEquals(2, wrappers.size());
+        assertTrue(wrappers.get(0).closed);
+        assertFalse(wrappers.get(1).closed);
+        // the wrapper of the new path is kept
+        assertEquals("b: line3", exec("b", "line3"));
+        assertEquals(2, wrappers.size());
+    }
+
+    @Test
+    public void testFinishClosesWrapper() throws IOException {
+        exec("a", "line1");
+        EchoWrapper wrapper = wrappers.get(0);
+        udf.finish();
+        assertTrue(wrapper.closed);
+        // a later tuple sets up a new wrapper
+        assertEquals("a: line2", exec("a", "line2"));
+        assertEquals(2, wrappers.size());
+        assertFalse(wrappers.get(1).closed);
+    }
+
+}
@@ -0,0 +1,115 @@
+package eu.scape_project.pt.udf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DefaultDataBag;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.junit.Test;
+
+public class MultiXPathFunctionTest {
+
+    private static final String FITS =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<fits>\n"
+        + "  <identification>\n"
+        + "    <identity format=\"Portable Document Format\"/>\n"
+        + "  </identification>\n"
+        + "  <filestatus>\n"
+        + "    <well-formed>true</well-formed>\n"
+        + "    <valid>false</valid>\n"
+        + "    <valid/>\n"
+        + "  </filestatus>\n"
+        + "</fits>\n";
+
+    private static final String[] EXPRESSIONS = {
+        "/fits/filestatus/valid",
+        "/fits/identification/identity/@format",
+        "/fits/unknown",
+        "/fits/filestatus/well-formed"
+    };
+
+    private final TupleFactory tupleFactory = TupleFactory.getInstance();
+
+    private Tuple input(Object expressions) {
+        return tupleFactory.newTuple(Arrays.asList(expressions, tupleFactory.newTuple(FITS)));
+    }
+
+    private static List<String> values(Object field) throws IOException {
+        assertTrue(field instanceof DataBag);
+        List<String> values = new ArrayList<String>();
+        for( Tuple tuple : (DataBag) field ) {
+            assertEquals(1, tuple.size());
+            values.add((String) tuple.get(0));
+        }
+        return values;
+    }
+
+    /**
+     * Asserts a bag per expression, in the order of {@link #EXPRESSIONS}.
+     */
+    private static void assertResult(Tuple result) throws IOException {
+        assertEquals(EXPRESSIONS.length, result.size());
+        // an element without children yields null
+        assertEquals(Arrays.asList("false", null), values(result.get(0)));
+        assertEquals(Collections.singletonList("Portable Document Format"), values(result.get(1)));
+        assertEquals(Collections.<String>emptyList(), values(result.get(2)));
+        assertEquals(Collections.singletonList("true"), values(result.get(3)));
+    }
+
+    @Test
+    public void testExpressionsAsTuple() throws IOException {
+        Tuple expressions = tupleFactory.newTuple(new ArrayList<Object>(Arrays.asList(EXPRESSIONS)));
+        assertResult(new MultiXPathFunction().exec(input(expressions)));
+    }
+
+    @Test
+    public void testExpressionsAsBag() throws IOException {
+        DataBag expressions = new DefaultDataBag();
+        for( String expression : EXPRESSIONS ) {
+            expressions.add(tupleFactory.newTuple(expression));
+        }
+        assertResult(new MultiXPathFunction().exec(input(expressions)));
+    }
+
+    @Test
+    public void testModes() throws IOException {
+        Tuple expressions = tupleFactory.newTuple(new ArrayList<Object>(Arrays.asList(EXPRESSIONS)));
+        assertResult(new MultiXPathFunction("dom").exec(input(expressions)));
+        assertResult(new MultiXPathFunction("stream").exec(input(expressions)));
+    }
+
+    @Test
+    public void testRejectsOtherExpressionTypes() throws IOException {
+        for( Object expressions : new Object[]{EXPRESSIONS[0], 42, null} ) {
+            try {
+                new MultiXPathFunction().exec(input(expressions));
+                fail("expressions " + expressions + " not rejected");
+            } catch (IllegalArgumentException ex) {
+                assertEquals("Expressions need to be a tuple or a bag of strings", ex.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsWrongNumberOfArguments() throws IOException {
+        assertNull(new MultiXPathFunction().exec(null));
+        try {
+            new MultiXPathFunction().exec(tupleFactory.newTuple(FITS));
+            fail("single argument not rejected");
+        } catch (IllegalArgumentException ex) {
+            assertEquals("Tuple needs to contain only two arguments", ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package eu.scape_project.pt.udf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.Test;
+
+import eu.scape_project.pt.ToolWrapper;
+
+public class ToolWrapperPoolTest {
+
+    /**
+     * Wrapper recording whether it has been closed.
+     */
+    static class TestWrapper extends ToolWrapper {
+        final String toolspecsPath;
+        volatile boolean closed;
+
+        TestWrapper(String toolspecsPath) {
+            this.toolspecsPath = toolspecsPath;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            super.close();
+        }
+    }
+
+    /**
+     * Pool handing out test wrappers instead of set up ones.
+     */
+    static class TestPool extends ToolWrapperPool {
+        TestPool(int size) {
+            super(new Configuration(false), size);
+        }
+
+        @Override
+        ToolWrapper newWrapper(String toolspecsPath) throws IOException {
+            return new TestWrapper(toolspecsPath);
+        }
+    }
+
+    @Test
+    public void testReleasedWrapperIsReused() throws IOException {
+        ToolWrapperPool pool = new TestPool(2);
+        ToolWrapper wrapper = pool.borrow("a");
+        pool.release("a", wrapper);
+        assertEquals(1, pool.getNumIdle());
+        assertSame(wrapper, pool.borrow("a"));
+        assertEquals(0, pool.getNumIdle());
+        // not handed out for another toolspec path
+        assertEquals("b", ((TestWrapper) pool.borrow("b")).toolspecsPath);
+    }
+
+    @Test
+    public void testReleaseKeepsAtMostSizeIdle() throws IOException {
+        ToolWrapperPool pool = new TestPool(2);
+        TestWrapper first = (TestWrapper) pool.borrow("a");
+        TestWrapper second = (TestWrapper) pool.borrow("a");
+        TestWrapper third = (TestWrapper) pool.borrow("a");
+        pool.release("a", first);
+        pool.release("a", second);
+        pool.release("a", third);
+        assertEquals(2, pool.getNumIdle());
+        assertFalse(first.closed);
+        assertFalse(second.closed);
+        assertTrue(third.closed);
+    }
+
+    @Test
+    public void testReleaseEvictsOtherPath() throws IOException {
+        ToolWrapperPool pool = new TestPool(2);
+        TestWrapper a1 = (TestWrapper) pool.borrow("a");
+        TestWrapper a2 = (TestWrapper) pool.borrow("a");
+        TestWrapper b = (TestWrapper) pool.borrow("b");
+        pool.release("a", a1);
+        pool.release("a", a2);
+        pool.release("b", b);
+        assertEquals(2, pool.getNumIdle());
+        // the least recently released wrapper of the other path made room
+        assertTrue(a1.closed);
+        assertFalse(a2.closed);
+        assertFalse(b.closed);
+        assertSame(b, pool.borrow("b"));
+        assertSame(a2, pool.borrow("a"));
+    }
+
+    @Test
+    public void testReleaseAfterClose() throws IOException {
+        ToolWrapperPool pool = new TestPool(2);
+        TestWrapper idle = (TestWrapper) pool.borrow("a");
+        TestWrapper borrowed = (TestWrapper) pool.borrow("a");
+        pool.release("a", idle);
+        pool.close();
+        assertTrue(idle.closed);
+        assertEquals(0, pool.getNumIdle());
+        pool.release("a", borrowed);
+        assertTrue(borrowed.closed);
+        assertEquals(0, pool.getNumIdle());
+    }
+
+}
@@ -0,0 +1,122 @@
+package eu.scape_project.pt.udf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.scape_project.pt.udf.XPathEvaluator.Mode;
+import eu.scape_project.pt.udf.XPathEvaluator.SimplePath;
+
+public class XPathEvaluatorTest {
+
+    private static final String FITS =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<fits xmlns=\"http://hul.harvard.edu/ois/xml/ns/fits/fits_output\">\n"
+        + "  <identification>\n"
+        + "    <identity format=\"Portable Document Format\" mimetype=\"application/pdf\">\n"
+        + "      <tool toolname=\"Jhove\"/>\n"
+        + "    </identity>\n"
+        + "    <identity format=\"PDF/A\"><tool toolname=\"Droid\"/></identity>\n"
+        + "  </identification>\n"
+        + "  <filestatus>\n"
+        + "    <well-formed toolname=\"Jhove\">true</well-formed>\n"
+        + "    <valid toolname=\"Jhove\">a &amp; b<![CDATA[ <c>]]></valid>\n"
+        + "    <valid toolname=\"Droid\"><!-- none --></valid>\n"
+        + "    <valid toolname=\"Other\"/>\n"
+        + "  </filestatus>\n"
+        + "  <x:valid xmlns:x=\"urn:x\">prefixed</x:valid>\n"
+        + "</fits>\n";
+
+    @Test
+    public void testSimplePath() {
+        assertNotNull(SimplePath.parse("/fits/filestatus/valid"));
+        assertNotNull(SimplePath.parse(" /fits/identification/identity/@format "));
+        assertNull(SimplePath.parse("//valid"));
+        assertNull(SimplePath.parse("/fits/filestatus/valid[1]"));
+        assertNull(SimplePath.parse("/fits/filestatus/valid/text()"));
+        assertNull(SimplePath.parse("/fits/@a/b"));
+        assertNull(SimplePath.parse("fits/filestatus"));
+        assertNull(SimplePath.parse("/x:valid"));
+    }
+
+    @Test
+    public void testModesAgree() throws Exception {
+        for (String expression : new String[]{
+                "/fits/filestatus/well-formed",
+                "/fits/filestatus/valid",
+                "/fits/identification/identity/@format",
+                "/fits/identification/identity/@mimetype",
+                "/fits/identification",
+                "/fits/unknown",
+                "/valid"}) {
+            assertEquals(expression,
+                    new XPathEvaluator(Mode.DOM).evaluate(expression, FITS),
+                    new XPathEvaluator(Mode.STREAM).evaluate(expression, FITS));
+        }
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        XPathEvaluator evaluator = new XPathEvaluator(Mode.STREAM);
+        assertEquals(Collections.singletonList("true"),
+                evaluator.evaluate("/fits/filestatus/well-formed", FITS));
+        assertEquals(Arrays.asList("Portable Document Format", "PDF/A"),
+                evaluator.evaluate("/fits/identification/identity/@format", FITS));
+        assertEquals(Arrays.asList("a & b", " none ", null),
+                evaluator.evaluate("/fits/filestatus/valid", FITS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamRejectsOtherExpressions() throws Exception {
+        new XPathEvaluator(Mode.STREAM).evaluate("//valid", FITS);
+    }
+
+    @Test
+    public void testAuto() throws Exception {
+        XPathEvaluator evaluator = new XPathEvaluator(Mode.AUTO);
+        assertEquals(Arrays.asList("true"),
+                evaluator.evaluate("//well-formed[@toolname='Jhove']", FITS));
+        assertEquals(Arrays.asList("Droid"),
+                evaluator.evaluate("/fits/identification/identity[2]/tool/@toolname", FITS));
+    }
+
+    @Test
+    public void testSeveralExpressions() throws Exception {
+        List<String> simple = Arrays.asList(
+                "/fits/filestatus/valid",
+                "/fits/identification/identity/@format",
+                "/fits/identification/identity",
+                "/fits/identification/identity/tool/@toolname",
+                "/fits/filestatus/valid");
+        List<List<String>> values = new XPathEvaluator(Mode.STREAM).evaluate(simple, FITS);
+        assertEquals(simple.size(), values.size());
+        for (int i = 0; i < simple.size(); i++) {
+            assertEquals(simple.get(i),
+                    new XPathEvaluator(Mode.DOM).evaluate(simple.get(i), FITS), values.get(i));
+        }
+
+        List<String> mixed = Arrays.asList("/fits/filestatus/well-formed", "count(//valid)");
+        try {
+            new XPathEvaluator(Mode.STREAM).evaluate(mixed, FITS);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        mixed = Arrays.asList("/fits/filestatus/well-formed", "//identity[2]/@format");
+        assertEquals(Arrays.asList(Arrays.asList("true"), Arrays.asList("PDF/A")),
+                new XPathEvaluator(Mode.AUTO).evaluate(mixed, FITS));
+    }
+
+    @Test
+    public void testCompiledExpressionsAreCached() throws Exception {
+        assertSame(XPathEvaluator.compile("//valid"), XPathEvaluator.compile("//valid"));
+    }
+
+}
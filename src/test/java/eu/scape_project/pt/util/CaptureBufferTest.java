@@ -0,0 +1,74 @@
+package eu.scape_project.pt.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CaptureBufferTest {
+
+    private File spillDir;
+
+    @Before
+    public void setUp() throws IOException {
+        spillDir = Files.createTempDirectory("capture").toFile();
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        CaptureBuffer capture = new CaptureBuffer(16, spillDir);
+        capture.write("hello ".getBytes());
+        capture.write('w');
+        capture.write("orld".getBytes());
+        capture.close();
+
+        assertFalse(capture.isSpilled());
+        assertEquals(11, capture.size());
+        assertEquals("hello world", capture.toString());
+        Text text = new Text("previous content");
+        capture.writeTo(text);
+        assertEquals("hello world", text.toString());
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        byte[] bytes = new byte[100];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        CaptureBuffer capture = new CaptureBuffer(16, spillDir);
+        capture.write(bytes, 0, 10);
+        capture.write(bytes, 10, 90);
+        capture.close();
+
+        assertTrue(capture.isSpilled());
+        assertEquals(1, spillDir.list().length);
+        assertEquals(100, capture.size());
+        Text text = new Text();
+        capture.writeTo(text);
+        assertArrayEquals(bytes, Arrays.copyOf(text.getBytes(), text.getLength()));
+
+        capture.reset();
+        assertEquals(0, spillDir.list().length);
+        assertEquals(0, capture.size());
+        capture.write("next".getBytes());
+        assertEquals("next", capture.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterRelease() throws IOException {
+        CaptureBuffer capture = new CaptureBuffer(16, spillDir);
+        capture.release();
+        capture.write('x');
+    }
+
+}
@@ -0,0 +1,61 @@
+package eu.scape_project.pt.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import eu.scape_project.pt.util.ExecutionMetrics.Histogram;
+import eu.scape_project.pt.util.ExecutionMetrics.Phase;
+
+public class ExecutionMetricsTest {
+
+    @Test
+    public void testLines() throws IOException {
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        metrics.startLine();
+        long t = System.nanoTime();
+        metrics.time(Phase.EXECUTE, t - 5000000);
+        metrics.endLine();
+        // lines without key are not recorded
+        assertNull(metrics.getHistogram("file.identify", Phase.EXECUTE));
+
+        metrics.startLine();
+        metrics.setLineKey("file.identify");
+        t = metrics.time(Phase.PARSE, System.nanoTime());
+        metrics.time(Phase.EXECUTE, t - 5000000);
+        assertTrue(metrics.getLineNanos(Phase.EXECUTE) >= 5000000);
+        metrics.endLine();
+
+        Histogram h = metrics.getHistogram("file.identify", Phase.EXECUTE);
+        assertEquals(1, h.getCount());
+        assertTrue(h.getMin() >= 5000);
+        assertEquals(0, metrics.getHistogram("file.identify", Phase.LOCALIZE).getMax());
+
+        StringWriter writer = new StringWriter();
+        metrics.writeTo(writer);
+        assertEquals(Phase.values().length, writer.toString().split("\n").length);
+        assertTrue(writer.toString().startsWith("file.identify\tPARSE\t1\t"));
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            h.record(i);
+        }
+        assertEquals(100, h.getCount());
+        assertEquals(5050, h.getSum());
+        assertEquals(1, h.getMin());
+        assertEquals(100, h.getMax());
+        // buckets of powers of two: 50 lies in [32, 64), 90 and 99 in [64, 128)
+        assertEquals(63, h.getPercentile(50));
+        assertEquals(100, h.getPercentile(99));
+        assertEquals("1:1,3:2,7:4,15:8,31:16,63:32,127:37", h.getBuckets());
+    }
+
+}
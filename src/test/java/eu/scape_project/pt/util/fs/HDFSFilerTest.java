@@ -0,0 +1,131 @@
+package eu.scape_project.pt.util.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HDFSFilerTest {
+
+    private static final int INPUT_SIZE = 1024 * 1024;
+
+    private File remoteDir;
+    private File workingDir;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        // named pipes are not available, streamed inputs are copied
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+        LocalHdfs.register();
+        remoteDir = Files.createTempDirectory("remote").toFile();
+        workingDir = Files.createTempDirectory("working").toFile();
+        data = new byte[INPUT_SIZE];
+        new Random(42).nextBytes(data);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if( remoteDir != null ) ScratchDirectories.delete(remoteDir);
+        if( workingDir != null ) ScratchDirectories.delete(workingDir);
+    }
+
+    private Filer createStreamed(String name) throws IOException {
+        File file = new File(remoteDir, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        Filer filer = Filer.create(LocalHdfs.toRef(file));
+        filer.setWorkingDir(workingDir.getPath());
+        filer.localizeStreamed();
+        return filer;
+    }
+
+    private static byte[] readAll(File fifo) throws IOException {
+        InputStream in = new FileInputStream(fifo);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while( (n = in.read(buffer)) >= 0 ) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStreamed() throws IOException {
+        Filer filer = createStreamed("input.bin");
+        File fifo = new File(filer.getAbsoluteFileRef());
+        assertArrayEquals(data, readAll(fifo));
+        filer.release();
+        assertFalse(fifo.exists());
+    }
+
+    @Test
+    public void testToolNeverOpensPipe() throws IOException {
+        // released before or after the feeder blocks on opening the pipe
+        for( int i = 0; i < 20; i++ ) {
+            Filer filer = createStreamed("input.bin");
+            File fifo = new File(filer.getAbsoluteFileRef());
+            long start = System.currentTimeMillis();
+            filer.release();
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertFalse(fifo.exists());
+        }
+    }
+
+    @Test
+    public void testToolStopsReading() throws IOException {
+        Filer filer = createStreamed("input.bin");
+        File fifo = new File(filer.getAbsoluteFileRef());
+        InputStream in = new FileInputStream(fifo);
+        try {
+            assertEquals(data[0] & 0xFF, in.read());
+        } finally {
+            in.close();
+        }
+        long start = System.currentTimeMillis();
+        filer.release();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertFalse(fifo.exists());
+    }
+
+    @Test
+    public void testReadFailure() throws IOException {
+        Filer filer = createStreamed("input" + LocalHdfs.UNREADABLE_SUFFIX);
+        File fifo = new File(filer.getAbsoluteFileRef());
+        // the tool sees a truncated file
+        assertEquals(INPUT_SIZE / 2, readAll(fifo).length);
+        try {
+            filer.release();
+            fail("read failure not reported");
+        } catch (IOException ex) {
+            assertEquals("no live replica", ex.getCause().getMessage());
+        }
+        assertFalse(fifo.exists());
+    }
+
+}
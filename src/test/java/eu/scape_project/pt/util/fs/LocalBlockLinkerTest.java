@@ -0,0 +1,185 @@
+package eu.scape_project.pt.util.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.scape_project.pt.mapred.input.MockupFileSystem;
+
+public class LocalBlockLinkerTest {
+
+    private static final String CONTENT = "content of the only block";
+
+    /**
+     * Block ID whose subdirectories differ between the layouts.
+     */
+    private static final long BLOCK_ID = 0xABCD42L;
+
+    private static final String POOL_DIR = "current/BP-1/current/finalized/";
+    private static final String REPLICA_256 = POOL_DIR + "subdir171/subdir205/blk_" + BLOCK_ID;
+    private static final String REPLICA_32 = POOL_DIR + "subdir11/subdir13/blk_" + BLOCK_ID;
+
+    private File dataDir;
+    private File workingDir;
+    private MockupFileSystem fs;
+    private LocalBlockLinker linker;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("datanode").toFile();
+        workingDir = Files.createTempDirectory("working").toFile();
+
+        fs = new MockupFileSystem() {
+            @Override
+            public FileStatus getFileStatus(Path path) {
+                return new FileStatus(CONTENT.length(), false, 1, 0, 0, path);
+            }
+        };
+        linker = new LocalBlockLinker(new String[]{dataDir.getPath()},
+                Arrays.asList("localhost")) {
+            @Override
+            protected ExtendedBlock getBlock(BlockLocation location) {
+                return new ExtendedBlock("BP-1", BLOCK_ID);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        ScratchDirectories.delete(dataDir);
+        ScratchDirectories.delete(workingDir);
+    }
+
+    private File createReplica(String path, boolean writable) throws IOException {
+        File replica = new File(dataDir, path);
+        replica.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(replica);
+        out.write(CONTENT.getBytes());
+        out.close();
+        if( !writable ) replica.setWritable(false, false);
+        return replica;
+    }
+
+    private static void assumeReadOnly(File replica) {
+        // the super user may write to any file
+        assumeFalse(Files.isWritable(replica.toPath()));
+    }
+
+    private void createVersion(String path, int layoutVersion) throws IOException {
+        File version = new File(dataDir, path);
+        version.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(version);
+        out.write(("#Thu Jan 01 00:00:00 UTC 2015\nnamespaceID=1\nblockpoolID=BP-1\n"
+                    + "layoutVersion=" + layoutVersion + "\n").getBytes());
+        out.close();
+    }
+
+    private void addLocalFile(String name) {
+        fs.addFile(name, true, new BlockLocation[]{
+            new BlockLocation(null, new String[]{"remotehost", "localhost"}, 0, CONTENT.length())
+        });
+    }
+
+    private void assertLinked(String name) throws IOException {
+        File localFile = new File(workingDir, name);
+        assertTrue(linker.link(fs, new Path(name), localFile));
+        assertEquals(CONTENT, new String(Files.readAllBytes(localFile.toPath())));
+    }
+
+    @Test
+    public void testLinkLocalBlock() throws IOException {
+        assumeReadOnly(createReplica(REPLICA_32, false));
+        addLocalFile("local");
+        assertLinked("local");
+    }
+
+    @Test
+    public void testLinkLayout256() throws IOException {
+        // Hadoop 2.6
+        createVersion("current/BP-1/current/VERSION", LocalBlockLinker.BLOCKID_BASED_LAYOUT);
+        assumeReadOnly(createReplica(REPLICA_256, false));
+        addLocalFile("local");
+        assertLinked("local");
+    }
+
+    @Test
+    public void testLinkLayout32() throws IOException {
+        createVersion("current/VERSION", LocalBlockLinker.BLOCKID_BASED_LAYOUT_32_BY_32);
+        assumeReadOnly(createReplica(REPLICA_32, false));
+        addLocalFile("local");
+        assertLinked("local");
+    }
+
+    @Test
+    public void testLayoutOfVersionIsUsed() throws IOException {
+        // a file where the other layout would put the replica is ignored
+        createVersion("current/BP-1/current/VERSION", LocalBlockLinker.BLOCKID_BASED_LAYOUT);
+        createReplica(REPLICA_32, false);
+        addLocalFile("local");
+        assertFalse(linker.link(fs, new Path("local"), new File(workingDir, "local")));
+    }
+
+    @Test
+    public void testProbesBothLayoutsWithoutVersion() throws IOException {
+        assumeReadOnly(createReplica(REPLICA_256, false));
+        addLocalFile("local");
+        assertLinked("local");
+    }
+
+    @Test
+    public void testOldLayoutIsNotLinked() throws IOException {
+        createVersion("current/VERSION", -55);
+        createReplica(REPLICA_256, false);
+        addLocalFile("local");
+        assertFalse(linker.link(fs, new Path("local"), new File(workingDir, "local")));
+    }
+
+    @Test
+    public void testWritableReplicaIsNotLinked() throws IOException {
+        createReplica(REPLICA_32, true);
+        addLocalFile("local");
+        File localFile = new File(workingDir, "local");
+
+        assertFalse(linker.link(fs, new Path("local"), localFile));
+        assertFalse(localFile.exists());
+    }
+
+    @Test
+    public void testRemoteBlockIsNotLinked() throws IOException {
+        createReplica(REPLICA_32, false);
+        fs.addFile("remote", true, new BlockLocation[]{
+            new BlockLocation(null, new String[]{"remotehost"}, 0, CONTENT.length())
+        });
+        File localFile = new File(workingDir, "remote");
+
+        assertFalse(linker.link(fs, new Path("remote"), localFile));
+        assertFalse(localFile.exists());
+    }
+
+    @Test
+    public void testMultipleBlocksAreNotLinked() throws IOException {
+        createReplica(REPLICA_32, false);
+        fs.addFile("multi", true, new BlockLocation[]{
+            new BlockLocation(null, new String[]{"localhost"}, 0, 10),
+            new BlockLocation(null, new String[]{"localhost"}, 10, CONTENT.length() - 10)
+        });
+
+        assertFalse(linker.link(fs, new Path("multi"), new File(workingDir, "multi")));
+    }
+
+}
@@ -0,0 +1,102 @@
+package eu.scape_project.pt.util.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+
+/**
+ * Local filesystem posing as HDFS, so that filers created for hdfs URIs
+ * work on local files in tests.
+ *
+ * Files named with {@link #UNREADABLE_SUFFIX} fail to be read after half
+ * of their bytes, like a file whose remaining blocks have no live replica.
+ */
+public class LocalHdfs extends RawLocalFileSystem {
+
+    public static final URI TEST_URI = URI.create("hdfs://tomar-test/");
+
+    public static final String UNREADABLE_SUFFIX = ".unreadable";
+
+    /**
+     * Puts an instance into the filesystem cache of Hadoop, so that later
+     * lookups of hdfs://tomar-test get it whatever their configuration.
+     */
+    public static FileSystem register() throws IOException {
+        Configuration conf = new Configuration();
+        conf.setClass("fs.hdfs.impl", LocalHdfs.class, FileSystem.class);
+        return FileSystem.get(TEST_URI, conf);
+    }
+
+    /**
+     * Gets the hdfs reference of a local file.
+     */
+    public static String toRef(File file) {
+        return "hdfs://" + TEST_URI.getAuthority() + file.getAbsolutePath();
+    }
+
+    @Override
+    public URI getUri() {
+        return TEST_URI;
+    }
+
+    @Override
+    public FSDataInputStream open(Path f, int bufferSize) throws IOException {
+        FSDataInputStream in = super.open(f, bufferSize);
+        if( !f.getName().endsWith(UNREADABLE_SUFFIX) ) return in;
+        return new FSDataInputStream(new FailingInputStream(in, getFileStatus(f).getLen() / 2));
+    }
+
+    /**
+     * Stream failing at a given position.
+     */
+    private static class FailingInputStream extends FSInputStream {
+        private final FSDataInputStream in;
+        private final long failAt;
+
+        FailingInputStream(FSDataInputStream in, long failAt) {
+            this.in = in;
+            this.failAt = failAt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if( in.getPos() >= failAt ) throw new IOException("no live replica");
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long pos = in.getPos();
+            if( pos >= failAt ) throw new IOException("no live replica");
+            return in.read(b, off, (int) Math.min(len, failAt - pos));
+        }
+
+        @Override
+        public void seek(long pos) throws IOException {
+            in.seek(pos);
+        }
+
+        @Override
+        public long getPos() throws IOException {
+            return in.getPos();
+        }
+
+        @Override
+        public boolean seekToNewSource(long targetPos) throws IOException {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
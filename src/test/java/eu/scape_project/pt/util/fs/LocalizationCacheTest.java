@@ -0,0 +1,100 @@
+package eu.scape_project.pt.util.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalizationCacheTest {
+
+    private File remoteDir;
+    private File cacheDir;
+    private File workingDir;
+    private FileSystem fs;
+
+    @Before
+    public void setUp() throws IOException {
+        remoteDir = Files.createTempDirectory("remote").toFile();
+        cacheDir = Files.createTempDirectory("cache").toFile();
+        workingDir = Files.createTempDirectory("working").toFile();
+        fs = FileSystem.getLocal(new Configuration());
+    }
+
+    @Test
+    public void testFetch() throws IOException {
+        LocalizationCache cache = new LocalizationCache(cacheDir, 1024);
+        Path profile = createRemoteFile("profile.icc", "0123456789");
+
+        File first = new File(workingDir, "first.icc");
+        assertTrue(cache.fetch(fs, profile, first));
+        assertEquals(1, cache.getMisses());
+        assertEquals("0123456789", new String(Files.readAllBytes(first.toPath())));
+
+        File second = new File(workingDir, "second.icc");
+        assertTrue(cache.fetch(fs, profile, second));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+
+        // another version of the file is another entry
+        profile = createRemoteFile("profile.icc", "01234567890");
+        new File(profile.toUri().getPath()).setLastModified(System.currentTimeMillis() + 5000);
+        File third = new File(workingDir, "third.icc");
+        assertTrue(cache.fetch(fs, profile, third));
+        assertEquals(2, cache.getMisses());
+        assertEquals("01234567890", new String(Files.readAllBytes(third.toPath())));
+    }
+
+    @Test
+    public void testNotCached() throws IOException {
+        LocalizationCache cache = new LocalizationCache(cacheDir, 5);
+        assertFalse(cache.fetch(fs, new Path(remoteDir.toURI()), new File(workingDir, "dir")));
+        assertFalse(cache.fetch(fs, createRemoteFile("large", "0123456789"),
+                    new File(workingDir, "large")));
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        LocalizationCache cache = new LocalizationCache(cacheDir, 25);
+        Path a = createRemoteFile("a", "aaaaaaaaaa");
+        Path b = createRemoteFile("b", "bbbbbbbbbb");
+        Path c = createRemoteFile("c", "cccccccccc");
+        assertTrue(cache.fetch(fs, a, new File(workingDir, "a")));
+        assertTrue(cache.fetch(fs, b, new File(workingDir, "b")));
+        long now = System.currentTimeMillis();
+        entry(b).setLastModified(now - 20000);
+        // a is used again
+        entry(a).setLastModified(now - 10000);
+
+        assertTrue(cache.fetch(fs, c, new File(workingDir, "c")));
+        assertTrue(entry(a).isFile());
+        assertFalse(entry(b).exists());
+        assertTrue(entry(c).isFile());
+        // handed out files stay
+        assertTrue(new File(workingDir, "b").isFile());
+    }
+
+    private File entry(Path path) throws IOException {
+        return new File(cacheDir, LocalizationCache.getKey(fs.getFileStatus(path)));
+    }
+
+    private Path createRemoteFile(String name, String content) throws IOException {
+        File file = new File(remoteDir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes());
+        out.close();
+        return new Path(file.toURI());
+    }
+
+}
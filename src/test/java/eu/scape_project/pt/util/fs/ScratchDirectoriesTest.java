@@ -0,0 +1,75 @@
+package eu.scape_project.pt.util.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScratchDirectoriesTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("scratch").toFile();
+    }
+
+    @Test
+    public void testReleaseDeletesInBackground() throws Exception {
+        ScratchDirectories scratchDirs = new ScratchDirectories(root, 4);
+        File first = scratchDirs.create();
+        File second = scratchDirs.create();
+        assertFalse(first.equals(second));
+        assertEquals(scratchDirs.getTaskDir(), first.getParentFile());
+
+        createFile(new File(first, "output/nested/result.txt")).setReadOnly();
+        File outside = createFile(new File(root, "outside.txt"));
+        Files.createSymbolicLink(new File(first, "link").toPath(), outside.toPath());
+
+        scratchDirs.release(first);
+        for( int i = 0; i < 100 && first.exists(); i++ ) {
+            Thread.sleep(50);
+        }
+        assertFalse(first.exists());
+        assertTrue(second.isDirectory());
+        // links are not followed
+        assertTrue(outside.isFile());
+
+        scratchDirs.close();
+        assertFalse(second.exists());
+        assertFalse(scratchDirs.getTaskDir().exists());
+    }
+
+    @Test
+    public void testCloseDeletesDeferredDirectories() throws Exception {
+        ScratchDirectories scratchDirs = new ScratchDirectories(root, 1);
+        File[] dirs = new File[10];
+        for( int i = 0; i < dirs.length; i++ ) {
+            dirs[i] = scratchDirs.create();
+            createFile(new File(dirs[i], "file"));
+            // never blocks, even if the cleaner is behind
+            scratchDirs.release(dirs[i]);
+        }
+        scratchDirs.close();
+        for( File dir : dirs ) {
+            assertFalse(dir.exists());
+        }
+        assertTrue(root.isDirectory());
+    }
+
+    private static File createFile(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("scratch".getBytes());
+        out.close();
+        return file;
+    }
+
+}
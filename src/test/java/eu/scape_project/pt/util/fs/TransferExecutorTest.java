@@ -0,0 +1,174 @@
+package eu.scape_project.pt.util.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TransferExecutorTest {
+
+    /**
+     * Filer recording the thread it has been localized on, optionally
+     * failing or blocking.
+     */
+    private static class TestFiler extends Filer {
+        private final IOException failure;
+        private final CountDownLatch blocked;
+        private final CountDownLatch interrupted;
+        volatile Thread localizedOn;
+
+        TestFiler(IOException failure, CountDownLatch blocked, CountDownLatch interrupted) {
+            this.failure = failure;
+            this.blocked = blocked;
+            this.interrupted = interrupted;
+        }
+
+        TestFiler() {
+            this(null, null, null);
+        }
+
+        @Override
+        public void localize_(boolean copy) throws IOException {
+            localizedOn = Thread.currentThread();
+            if( blocked != null ) {
+                blocked.countDown();
+                try {
+                    Thread.sleep(60 * 1000);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                }
+            }
+            if( failure != null ) throw failure;
+        }
+
+        @Override
+        public void setWorkingDir(String strDir) {
+        }
+
+        @Override
+        public void localize() {
+        }
+
+        @Override
+        public void localizeStreamed() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public void delocalize() throws IOException {
+            localize_(false);
+        }
+
+        @Override
+        public String getAbsoluteFileRef() {
+            return null;
+        }
+
+        @Override
+        public String getRelativeFileRef() {
+            return null;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return null;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return null;
+        }
+    }
+
+    @Test
+    public void testFailuresAreAggregated() {
+        TransferExecutor transfers = new TransferExecutor(4);
+        IOException first = new IOException("first");
+        IOException second = new IOException("second");
+        TestFiler ok = new TestFiler();
+        try {
+            transfers.localize(Arrays.<Filer>asList(new TestFiler(first, null, null), ok,
+                        new TestFiler(second, null, null)), true);
+            fail("failures not reported");
+        } catch (IOException ex) {
+            assertEquals("failed to localize 2 of 3 files:\n  " + first + "\n  " + second,
+                    ex.getMessage());
+            assertSame(first, ex.getCause());
+            assertEquals(1, ex.getSuppressed().length);
+            assertSame(second, ex.getSuppressed()[0]);
+        } finally {
+            transfers.shutdown();
+        }
+        // the other transfers are run to completion
+        assertTrue(ok.localizedOn != null);
+    }
+
+    @Test
+    public void testSingleTaskRunsInline() throws IOException {
+        TransferExecutor transfers = new TransferExecutor(4);
+        try {
+            TestFiler filer = new TestFiler();
+            transfers.delocalize(Collections.<Filer>singletonList(filer));
+            assertSame(Thread.currentThread(), filer.localizedOn);
+        } finally {
+            transfers.shutdown();
+        }
+
+        transfers = new TransferExecutor(1);
+        TestFiler first = new TestFiler();
+        TestFiler second = new TestFiler();
+        transfers.localize(Arrays.<Filer>asList(first, second), true);
+        assertSame(Thread.currentThread(), first.localizedOn);
+        assertSame(Thread.currentThread(), second.localizedOn);
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        final TransferExecutor transfers = new TransferExecutor(2);
+        final CountDownLatch blocked = new CountDownLatch(2);
+        final CountDownLatch interrupted = new CountDownLatch(2);
+        final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+        final AtomicReference<Boolean> stillInterrupted = new AtomicReference<Boolean>();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transfers.localize(Arrays.<Filer>asList(
+                                new TestFiler(null, blocked, interrupted),
+                                new TestFiler(null, blocked, interrupted)), true);
+                } catch (IOException ex) {
+                    failure.set(ex);
+                }
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        try {
+            caller.start();
+            assertTrue(blocked.await(10, TimeUnit.SECONDS));
+            caller.interrupt();
+            caller.join(10 * 1000);
+
+            assertTrue(failure.get().getCause() instanceof InterruptedException);
+            assertTrue(stillInterrupted.get());
+            // running transfers are cancelled
+            assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+        } finally {
+            transfers.shutdown();
+        }
+    }
+
+}